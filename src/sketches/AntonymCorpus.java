@@ -0,0 +1,514 @@
+package sketches;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Packed, memory-mapped index of an antonym corpus.
+ *
+ * The corpus on disk is a directory tree with one file per word, named after
+ * the word and holding one antonym per line; the name of the directory a file
+ * sits in (relative to the corpus root) is its part of speech. compile()
+ * flattens all the valid (word, antonyms) pairs into a single index file:
+ *
+ *   header        magic, version and the count of every section below
+ *   string table  offsets into a block of UTF-8 bytes
+ *   words         string, part of speech, and a slice of the antonym table
+ *                 (with the antonyms that are as long as the word first)
+ *   antonyms      string indices
+ *   pairs         (word, antonym slot), grouped by part of speech
+ *   equal pairs   the pairs where the antonym is as long as the word
+ *   equal words   the words with at least one such antonym
+ *   length index  words grouped by length
+ *
+ * so that picking a random pair, a random pair for a part of speech, or a
+ * random word with same-length antonyms are all constant-time array reads.
+ */
+public class AntonymCorpus {
+	public static final int MAX_WORD_LENGTH = 90;
+	public static final String FORBIDDEN_CHARACTERS = "_ ";
+
+	private static final Pattern FORBIDDEN_PATTERN = Pattern.compile("[" + FORBIDDEN_CHARACTERS + "]");
+
+	private static final int MAGIC = 0x414e5449; // "ANTI"
+	private static final int VERSION = 1;
+	private static final int HEADER_INTS = 9;
+	private static final int WORD_INTS = 5;
+
+	private static final String NO_PART_OF_SPEECH = "any";
+
+	private final MappedByteBuffer buffer;
+
+	private final int stringCount;
+	private final int wordCount;
+	private final int antonymCount;
+	private final int pairCount;
+	private final int equalPairCount;
+	private final int equalWordCount;
+	private final int posCount;
+	private final int maxLength;
+
+	private final int stringOffsetsBase;
+	private final int stringDataBase;
+	private final int posBase;
+	private final int posPairStartBase;
+	private final int wordsBase;
+	private final int antonymsBase;
+	private final int pairsBase;
+	private final int equalPairsBase;
+	private final int equalWordsBase;
+	private final int lengthStartBase;
+	private final int wordsByLengthBase;
+
+	private final String[] posNames;
+
+	/**
+	 * Open the index for 'sourceDirectory', (re)compiling it first if it's
+	 * missing or older than anything in the directory, however deeply nested.
+	 *
+	 * @param sourceDirectory
+	 * @param indexFile
+	 * @return
+	 * @throws IOException
+	 */
+	public static AntonymCorpus open(File sourceDirectory, File indexFile) throws IOException {
+		if (!indexFile.isFile() || (sourceDirectory.isDirectory() && getNewestModified(sourceDirectory) > indexFile.lastModified())) {
+			compile(sourceDirectory, indexFile);
+		}
+		return new AntonymCorpus(indexFile);
+	}
+
+	/**
+	 * @param indexFile Index previously written by compile()
+	 * @throws IOException
+	 */
+	public AntonymCorpus(File indexFile) throws IOException {
+		FileInputStream in = new FileInputStream(indexFile);
+		try {
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			in.close();
+		}
+
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(indexFile + " isn't an antonym index (or was written by a different version)!");
+		}
+		stringCount = buffer.getInt(8);
+		wordCount = buffer.getInt(12);
+		antonymCount = buffer.getInt(16);
+		pairCount = buffer.getInt(20);
+		equalPairCount = buffer.getInt(24);
+		equalWordCount = buffer.getInt(28);
+		posCount = buffer.getInt(32);
+		maxLength = buffer.getInt(36);
+
+		stringOffsetsBase = (2 + HEADER_INTS) * 4;
+		stringDataBase = stringOffsetsBase + (stringCount + 1) * 4;
+		posBase = align(stringDataBase + buffer.getInt(stringOffsetsBase + stringCount * 4));
+		posPairStartBase = posBase + posCount * 4;
+		wordsBase = posPairStartBase + (posCount + 1) * 4;
+		antonymsBase = wordsBase + wordCount * WORD_INTS * 4;
+		pairsBase = antonymsBase + antonymCount * 4;
+		equalPairsBase = pairsBase + pairCount * 2 * 4;
+		equalWordsBase = equalPairsBase + equalPairCount * 2 * 4;
+		lengthStartBase = equalWordsBase + equalWordCount * 4;
+		wordsByLengthBase = lengthStartBase + (maxLength + 2) * 4;
+
+		posNames = new String[posCount];
+		for (int i = 0; i < posCount; ++i) {
+			posNames[i] = getString(buffer.getInt(posBase + i * 4));
+		}
+	}
+
+	public int getWordCount() { return wordCount; }
+
+	public int getPairCount() { return pairCount; }
+
+	public int getEqualLengthWordCount() { return equalWordCount; }
+
+	public String getWord(int word) {
+		return getString(wordInt(word, 0));
+	}
+
+	public String getPartOfSpeech(int word) {
+		return posNames[wordInt(word, 1)];
+	}
+
+	public int getAntonymCount(int word) {
+		return wordInt(word, 3);
+	}
+
+	/**
+	 * @param word
+	 * @return Number of antonyms of 'word' that are as long as it is; these come first in its antonym list
+	 */
+	public int getEqualLengthAntonymCount(int word) {
+		return wordInt(word, 4);
+	}
+
+	public String getAntonym(int word, int index) {
+		assert index >= 0 && index < getAntonymCount(word) : "No antonym " + index + " for " + getWord(word);
+		return getString(buffer.getInt(antonymsBase + (wordInt(word, 2) + index) * 4));
+	}
+
+	/**
+	 * @param random
+	 * @return Array of two strings: a random word, and one of its antonyms; null if the corpus is empty
+	 */
+	public String[] randomPair(Random random) {
+		if (pairCount == 0) return null;
+		return getPair(pairsBase, random.nextInt(pairCount));
+	}
+
+	/**
+	 * @param random
+	 * @param partOfSpeech
+	 * @return Array of two strings: a random word with the given part of speech, and one of its antonyms; null if there aren't any
+	 */
+	public String[] randomPair(Random random, String partOfSpeech) {
+		for (int pos = 0; pos < posCount; ++pos) {
+			if (posNames[pos].equals(partOfSpeech)) {
+				int start = buffer.getInt(posPairStartBase + pos * 4);
+				int end = buffer.getInt(posPairStartBase + (pos + 1) * 4);
+				if (start == end) return null;
+				return getPair(pairsBase, start + random.nextInt(end - start));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param random
+	 * @return Array of two strings of equal length: a random word, and one of its antonyms; null if there aren't any
+	 */
+	public String[] randomEqualLengthPair(Random random) {
+		if (equalPairCount == 0) return null;
+		return getPair(equalPairsBase, random.nextInt(equalPairCount));
+	}
+
+	/**
+	 * @param random
+	 * @return Index of a random word that has at least one antonym of the same length; -1 if there aren't any
+	 */
+	public int randomEqualLengthWord(Random random) {
+		if (equalWordCount == 0) return -1;
+		return buffer.getInt(equalWordsBase + random.nextInt(equalWordCount) * 4);
+	}
+
+	/**
+	 * @param random
+	 * @param length
+	 * @return Index of a random word that's 'length' characters long; -1 if there aren't any
+	 */
+	public int randomWordOfLength(Random random, int length) {
+		if (length < 0 || length > maxLength) return -1;
+		int start = buffer.getInt(lengthStartBase + length * 4);
+		int end = buffer.getInt(lengthStartBase + (length + 1) * 4);
+		if (start == end) return -1;
+		return buffer.getInt(wordsByLengthBase + (start + random.nextInt(end - start)) * 4);
+	}
+
+	private String[] getPair(int base, int index) {
+		int word = buffer.getInt(base + index * 8);
+		int slot = buffer.getInt(base + index * 8 + 4);
+		return new String[] { getWord(word), getString(buffer.getInt(antonymsBase + slot * 4)) };
+	}
+
+	private int wordInt(int word, int field) {
+		return buffer.getInt(wordsBase + (word * WORD_INTS + field) * 4);
+	}
+
+	private String getString(int index) {
+		int start = buffer.getInt(stringOffsetsBase + index * 4);
+		int end = buffer.getInt(stringOffsetsBase + (index + 1) * 4);
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = buffer.get(stringDataBase + start + i);
+		}
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return Latest modification time of 'file' or, if it's a directory, of anything under it
+	 */
+	private static long getNewestModified(File file) {
+		long newest = file.lastModified();
+		File[] files = file.isDirectory() ? file.listFiles() : null;
+		if (files != null) {
+			for (File child : files) {
+				newest = Math.max(newest, getNewestModified(child));
+			}
+		}
+		return newest;
+	}
+
+	private static int align(int offset) {
+		return (offset + 3) & ~3;
+	}
+
+	/**
+	 * Usage: AntonymCorpus &lt;corpus directory&gt; &lt;index file&gt;
+	 */
+	public static void main(String args[]) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: AntonymCorpus <corpus directory> <index file>");
+			System.exit(1);
+		}
+		compile(new File(args[0]), new File(args[1]));
+		AntonymCorpus corpus = new AntonymCorpus(new File(args[1]));
+		System.out.println(corpus.getWordCount() + " words, " + corpus.getPairCount() + " pairs written to " + args[1]);
+	}
+
+	/**
+	 * Walk the corpus under 'sourceDirectory' and write every valid (word,
+	 * antonyms) pair to 'indexFile'.
+	 *
+	 * @param sourceDirectory
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public static void compile(File sourceDirectory, File indexFile) throws IOException {
+		assert sourceDirectory.isDirectory() : "Can't find word data in " + sourceDirectory + "!";
+
+		// Taken before reading, so anything changed while compiling makes the index stale
+		long sourceModified = getNewestModified(sourceDirectory);
+		Compiler compiler = new Compiler();
+		compiler.addDirectory(sourceDirectory, NO_PART_OF_SPEECH);
+
+		File parent = indexFile.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory()) parent.mkdirs();
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		compiler.write(tmpFile);
+		indexFile.delete();
+		if (!tmpFile.renameTo(indexFile)) {
+			throw new IOException("Can't move " + tmpFile + " to " + indexFile + "!");
+		}
+		indexFile.setLastModified(sourceModified);
+	}
+
+	private static boolean isValid(String text) {
+		return text.length() > 0 && text.length() <= MAX_WORD_LENGTH && !FORBIDDEN_PATTERN.matcher(text).find();
+	}
+
+	private static class Compiler {
+		List<String> strings = new ArrayList<String>();
+		HashMap<String, Integer> stringIndices = new HashMap<String, Integer>();
+		List<String> posNames = new ArrayList<String>();
+		List<Integer> posStrings = new ArrayList<Integer>();
+
+		List<int[]> words = new ArrayList<int[]>(); // { string, pos, antonym strings... }
+
+		void addDirectory(File directory, String partOfSpeech) throws IOException {
+			File[] files = directory.listFiles();
+			Arrays.sort(files);
+			for (File file : files) {
+				if (file.isFile()) {
+					addWordFile(file, partOfSpeech);
+				} else if (file.isDirectory()) {
+					addDirectory(file, NO_PART_OF_SPEECH.equals(partOfSpeech) ? file.getName() : partOfSpeech + "/" + file.getName());
+				}
+			}
+		}
+
+		void addWordFile(File file, String partOfSpeech) throws IOException {
+			String word = file.getName();
+			if (!isValid(word)) return;
+
+			List<String> antonyms = new ArrayList<String>();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				String antonym;
+				while ((antonym = reader.readLine()) != null) {
+					antonym = antonym.trim();
+					if (isValid(antonym)) antonyms.add(antonym);
+				}
+			} finally {
+				reader.close();
+			}
+			if (antonyms.isEmpty()) return;
+
+			int pos = posNames.indexOf(partOfSpeech);
+			if (pos < 0) {
+				pos = posNames.size();
+				posNames.add(partOfSpeech);
+				posStrings.add(intern(partOfSpeech));
+			}
+
+			// Antonyms that are as long as the word go first
+			int[] entry = new int[2 + antonyms.size()];
+			entry[0] = intern(word);
+			entry[1] = pos;
+			int slot = 2;
+			for (String antonym : antonyms) {
+				if (antonym.length() == word.length()) entry[slot++] = intern(antonym);
+			}
+			for (String antonym : antonyms) {
+				if (antonym.length() != word.length()) entry[slot++] = intern(antonym);
+			}
+			words.add(entry);
+		}
+
+		int intern(String string) {
+			Integer index = stringIndices.get(string);
+			if (index == null) {
+				index = strings.size();
+				strings.add(string);
+				stringIndices.put(string, index);
+			}
+			return index;
+		}
+
+		void write(File file) throws IOException {
+			// Encode the string table
+			byte[][] stringBytes = new byte[strings.size()][];
+			int stringDataLength = 0;
+			for (int i = 0; i < stringBytes.length; ++i) {
+				stringBytes[i] = strings.get(i).getBytes("UTF-8");
+				stringDataLength += stringBytes[i].length;
+			}
+			int[] posTable = new int[posStrings.size()];
+			for (int i = 0; i < posTable.length; ++i) {
+				posTable[i] = posStrings.get(i);
+			}
+			
+			int numWords = words.size();
+			int numPos = posTable.length;
+
+			// Lay out words and their antonyms
+			int[] wordTable = new int[numWords * WORD_INTS];
+			int numAntonyms = 0, numEqualPairs = 0, numEqualWords = 0, maxLength = 0;
+			int[] equalCounts = new int[numWords];
+			for (int w = 0; w < numWords; ++w) {
+				int[] entry = words.get(w);
+				int length = strings.get(entry[0]).length();
+				for (int a = 2; a < entry.length && strings.get(entry[a]).length() == length; ++a) {
+					++equalCounts[w];
+				}
+				wordTable[w * WORD_INTS] = entry[0];
+				wordTable[w * WORD_INTS + 1] = entry[1];
+				wordTable[w * WORD_INTS + 2] = numAntonyms;
+				wordTable[w * WORD_INTS + 3] = entry.length - 2;
+				wordTable[w * WORD_INTS + 4] = equalCounts[w];
+
+				numAntonyms += entry.length - 2;
+				numEqualPairs += equalCounts[w];
+				if (equalCounts[w] > 0) ++numEqualWords;
+				maxLength = Math.max(maxLength, length);
+			}
+
+			// Pairs, grouped by part of speech
+			int[] pairs = new int[numAntonyms * 2];
+			int[] posPairStart = new int[numPos + 1];
+			int pairIndex = 0;
+			for (int pos = 0; pos < numPos; ++pos) {
+				posPairStart[pos] = pairIndex;
+				for (int w = 0; w < numWords; ++w) {
+					if (wordTable[w * WORD_INTS + 1] != pos) continue;
+					for (int a = 0; a < wordTable[w * WORD_INTS + 3]; ++a) {
+						pairs[pairIndex * 2] = w;
+						pairs[pairIndex * 2 + 1] = wordTable[w * WORD_INTS + 2] + a;
+						++pairIndex;
+					}
+				}
+			}
+			posPairStart[numPos] = pairIndex;
+
+			// Equal-length pairs and words
+			int[] equalPairs = new int[numEqualPairs * 2];
+			int[] equalWords = new int[numEqualWords];
+			int equalPairIndex = 0, equalWordIndex = 0;
+			for (int w = 0; w < numWords; ++w) {
+				if (equalCounts[w] == 0) continue;
+				equalWords[equalWordIndex++] = w;
+				for (int a = 0; a < equalCounts[w]; ++a) {
+					equalPairs[equalPairIndex * 2] = w;
+					equalPairs[equalPairIndex * 2 + 1] = wordTable[w * WORD_INTS + 2] + a;
+					++equalPairIndex;
+				}
+			}
+
+			// Words by length
+			int[] lengthStart = new int[maxLength + 2];
+			for (int w = 0; w < numWords; ++w) {
+				++lengthStart[strings.get(words.get(w)[0]).length() + 1];
+			}
+			for (int length = 1; length < lengthStart.length; ++length) {
+				lengthStart[length] += lengthStart[length - 1];
+			}
+			int[] wordsByLength = new int[numWords];
+			int[] fill = lengthStart.clone();
+			for (int w = 0; w < numWords; ++w) {
+				wordsByLength[fill[strings.get(words.get(w)[0]).length()]++] = w;
+			}
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(stringBytes.length);
+				out.writeInt(numWords);
+				out.writeInt(numAntonyms);
+				out.writeInt(pairIndex);
+				out.writeInt(numEqualPairs);
+				out.writeInt(numEqualWords);
+				out.writeInt(numPos);
+				out.writeInt(maxLength);
+				out.writeInt(0); // reserved
+
+				int offset = 0;
+				for (byte[] bytes : stringBytes) {
+					out.writeInt(offset);
+					offset += bytes.length;
+				}
+				out.writeInt(offset);
+				for (byte[] bytes : stringBytes) {
+					out.write(bytes);
+				}
+				for (int pad = align(stringDataLength) - stringDataLength; pad > 0; --pad) {
+					out.writeByte(0);
+				}
+
+				writeInts(out, posTable);
+				writeInts(out, posPairStart);
+				writeInts(out, wordTable);
+				for (int w = 0; w < numWords; ++w) {
+					int[] entry = words.get(w);
+					for (int a = 2; a < entry.length; ++a) out.writeInt(entry[a]);
+				}
+				writeInts(out, pairs);
+				writeInts(out, equalPairs);
+				writeInts(out, equalWords);
+				writeInts(out, lengthStart);
+				writeInts(out, wordsByLength);
+			} finally {
+				out.close();
+			}
+		}
+
+		private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+			for (int value : ints) out.writeInt(value);
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package sketches;
+
+/**
+ * Per-pixel difference between a video frame and a background frame, with
+ * thresholding into a foreground mask done in the same pass.
+ *
+ * In RGB mode the difference image holds the absolute difference of each
+ * color channel, as BlobsPlayground has always computed it; all three
+ * channels are differenced at once, as 16-bit lanes of a single long. In
+ * LUMA mode it holds the absolute difference in brightness, in gray. Either
+ * way, a pixel is foreground when the brightness of its difference is over
+ * the threshold. Rows are split into stripes processed in parallel.
+ */
+public class BackgroundSubtractor implements StripeExecutor.StripeTask {
+	public static final int RGB = 0;
+	public static final int LUMA = 1;
+
+	// Channels spread out into 16-bit lanes, plus a guard bit above each lane so subtracting never borrows across lanes
+	private static final long LANES = 0x000000FF00FF00FFL;
+	private static final long GUARDS = 0x0000010001000100L;
+	private static final long LANE_ONES = 0x0000000100010001L;
+
+	private final int width;
+	private final int height;
+	private final StripeExecutor stripes;
+	private final int[] stripeForeground;
+
+	private int mode = RGB;
+	private int threshold;
+
+	// Arguments of the subtract() in progress
+	private int[] frame;
+	private int[] background;
+	private int[] diff;
+	private byte[] mask;
+	private DirtyTiles tiles;
+
+	/**
+	 * @param width
+	 * @param height
+	 * @param stripes Executor to split frames up on
+	 */
+	public BackgroundSubtractor(int width, int height, StripeExecutor stripes) {
+		this.width = width;
+		this.height = height;
+		this.stripes = stripes;
+		this.stripeForeground = new int[stripes.getStripeCount()];
+		setThreshold(0);
+	}
+
+	public int getMode() { return mode; }
+
+	/**
+	 * @param mode RGB or LUMA
+	 */
+	public void setMode(int mode) {
+		assert mode == RGB || mode == LUMA : "Mode must be RGB or LUMA";
+		this.mode = mode;
+	}
+
+	public float getThreshold() { return threshold / 255f; }
+
+	/**
+	 * @param threshold Brightness of a difference, from 0 to 1, above which a pixel is foreground
+	 */
+	public void setThreshold(float threshold) {
+		this.threshold = Math.round(threshold * 255);
+	}
+
+	/**
+	 * @param frame Pixels of the current frame
+	 * @param background Pixels of the background frame
+	 * @param diff Where to write the difference image, or null if it isn't needed
+	 * @param mask Where to write 1 for foreground pixels and 0 for the rest, or null if it isn't needed
+	 * @return Number of foreground pixels
+	 */
+	public int subtract(int[] frame, int[] background, int[] diff, byte[] mask) {
+		assert frame.length >= width * height && background.length >= width * height : "Frames must be at least width x height";
+		this.frame = frame;
+		this.background = background;
+		this.diff = diff;
+		this.mask = mask;
+
+		stripes.run(this, height);
+
+		int foreground = 0;
+		for (int count : stripeForeground) foreground += count;
+
+		this.frame = this.background = this.diff = null;
+		this.mask = null;
+		return foreground;
+	}
+
+	/**
+	 * Like subtract(), but only in the tiles that are dirty; the difference
+	 * image and mask keep whatever they last had everywhere else. The
+	 * foreground count of every dirty tile is updated.
+	 *
+	 * @param frame Pixels of the current frame
+	 * @param background Pixels of the background frame
+	 * @param diff Where to write the difference image, or null if it isn't needed
+	 * @param mask Where to write 1 for foreground pixels and 0 for the rest, or null if it isn't needed
+	 * @param tiles Tiles of the frame, already update()d with it
+	 * @return Number of foreground pixels in the whole mask
+	 */
+	public int subtract(int[] frame, int[] background, int[] diff, byte[] mask, DirtyTiles tiles) {
+		assert frame.length >= width * height && background.length >= width * height : "Frames must be at least width x height";
+		this.frame = frame;
+		this.background = background;
+		this.diff = diff;
+		this.mask = mask;
+		this.tiles = tiles;
+
+		// Stripes of tile rows, rather than pixel rows
+		stripes.run(this, tiles.getRows());
+
+		int foreground = 0;
+		for (int tile = 0, n = tiles.getColumns() * tiles.getRows(); tile < n; ++tile) {
+			foreground += tiles.getForeground(tile);
+		}
+
+		this.frame = this.background = this.diff = null;
+		this.mask = null;
+		this.tiles = null;
+		return foreground;
+	}
+
+	/**
+	 * Like subtract(), but only within a rectangle, and all on the calling
+	 * thread, for regions too small to be worth splitting up.
+	 *
+	 * @param frame Pixels of the current frame
+	 * @param background Pixels of the background frame
+	 * @param diff Where to write the difference image, or null if it isn't needed
+	 * @param mask Where to write 1 for foreground pixels and 0 for the rest, or null if it isn't needed
+	 * @param x0 Left of the rectangle
+	 * @param y0 Top of the rectangle
+	 * @param x1 Column just past the right of the rectangle
+	 * @param y1 Row just past the bottom of the rectangle
+	 * @return Number of foreground pixels in the rectangle
+	 */
+	public int subtract(int[] frame, int[] background, int[] diff, byte[] mask, int x0, int y0, int x1, int y1) {
+		assert x0 >= 0 && y0 >= 0 && x1 <= width && y1 <= height : "Rectangle must be within the frame";
+		this.frame = frame;
+		this.background = background;
+		this.diff = diff;
+		this.mask = mask;
+
+		int foreground = 0;
+		for (int y = y0; y < y1; ++y) {
+			foreground += (mode == LUMA)
+				? subtractLuma(y * width + x0, y * width + x1)
+				: subtractRgb(y * width + x0, y * width + x1);
+		}
+
+		this.frame = this.background = this.diff = null;
+		this.mask = null;
+		return foreground;
+	}
+
+	public void run(int stripe, int startRow, int endRow) {
+		if (tiles != null) {
+			subtractTiles(startRow, endRow);
+			return;
+		}
+		stripeForeground[stripe] = (mode == LUMA)
+			? subtractLuma(startRow * width, endRow * width)
+			: subtractRgb(startRow * width, endRow * width);
+	}
+
+	private void subtractTiles(int startRow, int endRow) {
+		DirtyTiles tiles = this.tiles;
+		int tileSize = tiles.getTileSize();
+		int columns = tiles.getColumns();
+		boolean luma = (mode == LUMA);
+
+		int tile, x0, x1, y1, foreground;
+		for (int row = startRow; row < endRow; ++row) {
+			y1 = Math.min((row + 1) * tileSize, height);
+			for (int column = 0; column < columns; ++column) {
+				tile = row * columns + column;
+				if (!tiles.isDirty(tile)) continue;
+
+				x0 = column * tileSize;
+				x1 = Math.min(x0 + tileSize, width);
+				foreground = 0;
+				for (int y = row * tileSize; y < y1; ++y) {
+					foreground += luma
+						? subtractLuma(y * width + x0, y * width + x1)
+						: subtractRgb(y * width + x0, y * width + x1);
+				}
+				tiles.setForeground(tile, foreground);
+			}
+		}
+	}
+
+	private int subtractRgb(int start, int end) {
+		int[] frame = this.frame, background = this.background, diff = this.diff;
+		byte[] mask = this.mask;
+		int threshold = this.threshold;
+		int foreground = 0;
+
+		long current, lanes, negative;
+		int absDiff;
+		for (int i = start; i < end; ++i) {
+			// Each lane holds 256 + (current - background) for one channel
+			current = spread(frame[i]) | GUARDS;
+			lanes = current - spread(background[i]);
+
+			// Lanes whose guard bit was borrowed went negative; negate them (two's complement within the lane)
+			negative = (~lanes >>> 8) & LANE_ONES;
+			lanes = ((lanes & LANES) ^ (negative * 0xFF)) + negative;
+
+			absDiff = (int)(lanes & 0xFF) | (int)((lanes >>> 8) & 0xFF00) | (int)((lanes >>> 16) & 0xFF0000);
+			if (diff != null) diff[i] = 0xFF000000 | absDiff;
+			if (luma(absDiff) > threshold) {
+				++foreground;
+				if (mask != null) mask[i] = 1;
+			} else if (mask != null) {
+				mask[i] = 0;
+			}
+		}
+		return foreground;
+	}
+
+	private int subtractLuma(int start, int end) {
+		int[] frame = this.frame, background = this.background, diff = this.diff;
+		byte[] mask = this.mask;
+		int threshold = this.threshold;
+		int foreground = 0;
+
+		int absDiff;
+		for (int i = start; i < end; ++i) {
+			absDiff = luma(frame[i]) - luma(background[i]);
+			absDiff = (absDiff ^ (absDiff >> 31)) - (absDiff >> 31);
+
+			if (diff != null) diff[i] = 0xFF000000 | (absDiff << 16) | (absDiff << 8) | absDiff;
+			if (absDiff > threshold) {
+				++foreground;
+				if (mask != null) mask[i] = 1;
+			} else if (mask != null) {
+				mask[i] = 0;
+			}
+		}
+		return foreground;
+	}
+
+	/**
+	 * @param rgb
+	 * @return Blue, green and red of 'rgb' in bits 0, 16 and 32
+	 */
+	private static long spread(int rgb) {
+		return (rgb & 0xFFL) | ((rgb & 0xFF00L) << 8) | ((rgb & 0xFF0000L) << 16);
+	}
+
+	/**
+	 * @param rgb
+	 * @return Brightness of 'rgb', from 0 to 255, with the usual (Rec. 601) channel weights
+	 */
+	static int luma(int rgb) {
+		return (((rgb >> 16) & 0xFF) * 77 + ((rgb >> 8) & 0xFF) * 150 + (rgb & 0xFF) * 29) >> 8;
+	}
+}
@@ -0,0 +1,154 @@
+package sketches;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of parsed banner font masks.
+ *
+ * A mask file starts with two lines whose lengths give the number of columns
+ * and rows of every character, followed by one block per character: a line
+ * listing the characters that share the mask, then one line per row, with
+ * MASK_MARKER wherever the cell is lit. Each file is parsed once, into one
+ * packed bitmask per row per character, and shared by every font using it.
+ */
+public final class BannerFontMask {
+	public static final char MASK_MARKER = '#';
+
+	// Characters are indexed directly, so only this many are supported
+	public static final int CHARACTERS = 256;
+
+	private static final int MAX_COLUMNS = Integer.SIZE;
+
+	private static final String MASK_WIDTH_ERROR = "Each line in character's mask must not be longer than maximum width!";
+	private static final String MASK_COLUMNS_ERROR = "Masks can be at most " + MAX_COLUMNS + " columns wide!";
+	private static final String MASK_CHARACTER_ERROR = "Masks can only be given for characters below " + CHARACTERS + "!";
+
+	private static final ConcurrentHashMap<String, BannerFontMask> MASKS = new ConcurrentHashMap<String, BannerFontMask>();
+
+	private int columns;
+	private int rows;
+
+	// Row 'row' of 'character' is rowBits[character * rows + row], with column 'c' in bit 'c'
+	private int[] rowBits;
+	private final boolean[] defined = new boolean[CHARACTERS];
+
+	private BannerFontMask() {}
+
+	/**
+	 * @param maskFile
+	 * @return The shared, parsed mask in 'maskFile'
+	 * @throws FileNotFoundException
+	 */
+	public static BannerFontMask get(String maskFile) throws FileNotFoundException {
+		BannerFontMask mask = MASKS.get(maskFile);
+		if (mask == null) {
+			BufferedReader source = new BufferedReader(new FileReader(maskFile));
+			BannerFontMask newMask = new BannerFontMask();
+			try {
+				newMask.load(source);
+			} finally {
+				try {
+					source.close();
+				} catch (IOException e) {}
+			}
+
+			mask = MASKS.putIfAbsent(maskFile, newMask);
+			if (mask == null) mask = newMask;
+		}
+		return mask;
+	}
+
+	public int getColumns() { return this.columns; }
+
+	public int getRows() { return this.rows; }
+
+	/**
+	 * @param character
+	 * @return Whether the mask file has a mask for 'character'
+	 */
+	public boolean isDefined(char character) {
+		return character < CHARACTERS && defined[character];
+	}
+
+	/**
+	 * @param character
+	 * @param row
+	 * @return Lit cells of 'row' of 'character's mask, with column 'c' in bit 'c'
+	 */
+	public int getRowBits(char character, int row) {
+		return rowBits[character * this.rows + row];
+	}
+
+	/**
+	 * @param character
+	 * @param row
+	 * @param column
+	 * @return Whether the cell at 'row', 'column' of 'character's mask is lit
+	 */
+	public boolean isLit(char character, int row, int column) {
+		return (rowBits[character * this.rows + row] & (1 << column)) != 0;
+	}
+
+	private void load(BufferedReader source) {
+		int lineCount = 0;
+		String line;
+		String characters = null;
+		int characterRow = 0;
+		int[] characterBits = null;
+
+		try {
+			while ((line = source.readLine()) != null) {
+				++lineCount;
+				if (lineCount == 1) {
+					this.columns = line.length();
+					assert this.columns <= MAX_COLUMNS : MASK_COLUMNS_ERROR;
+				} else if (lineCount == 2) {
+					this.rows = line.length();
+					this.rowBits = new int[CHARACTERS * this.rows];
+				} else if (line.length() > 0 && characters == null) {
+					// Non-empty line + no current characters = starting new character mask
+					characters = line;
+					characterBits = new int[this.rows];
+					characterRow = 0;
+				} else if (characters != null) {
+					assert line.length() <= this.columns : MASK_WIDTH_ERROR + " on line: " + lineCount;
+
+					// Scan each character mask's line for 'on/off' locations
+					for (int column = 0; column < line.length(); ++column) {
+						if (line.charAt(column) == MASK_MARKER) characterBits[characterRow] |= 1 << column;
+					}
+					++characterRow;
+
+					if (characterRow >= this.rows) {
+						// Save last characters' rows, and reset for next character mask
+						save(characters, characterBits);
+						characters = null;
+						characterBits = null;
+					}
+				}
+			}
+			if (characters != null) {
+				// Save left-over rows, if any
+				save(characters, characterBits);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void save(String characters, int[] characterBits) {
+		char character;
+		for (int i = 0; i < characters.length(); ++i) {
+			character = characters.charAt(i);
+			assert character < CHARACTERS : MASK_CHARACTER_ERROR + " character: " + character;
+			if (character >= CHARACTERS) continue;
+			System.arraycopy(characterBits, 0, rowBits, character * this.rows, this.rows);
+			defined[character] = true;
+		}
+	}
+}
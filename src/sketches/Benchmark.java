@@ -0,0 +1,110 @@
+package sketches;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal measurement harness shared by the benchmark runners.
+ *
+ * Runs an operation for a number of warmup iterations, then times each of a
+ * number of measured iterations, and reports throughput, latency percentiles,
+ * bytes allocated per operation (on JVMs whose ThreadMXBean can count them)
+ * and garbage collection activity during the measured iterations.
+ */
+public final class Benchmark {
+	private Benchmark() {}
+
+	public static class Result {
+		public String name;
+		public long iterations;
+		public double opsPerSecond;
+		public long p50Nanos;
+		public long p90Nanos;
+		public long p99Nanos;
+		public long maxNanos;
+		public double bytesPerOp;
+		public long gcCount;
+		public long gcMillis;
+
+		public static String getHeader() {
+			return String.format("%-48s %10s %12s %10s %10s %10s %10s %12s %6s %8s",
+				"benchmark", "ops", "ops/s", "p50 us", "p90 us", "p99 us", "max us", "B/op", "gcs", "gc ms");
+		}
+
+		public String toString() {
+			return String.format("%-48s %10d %12.1f %10.1f %10.1f %10.1f %10.1f %12s %6d %8d",
+				name, iterations, opsPerSecond, p50Nanos / 1000d, p90Nanos / 1000d, p99Nanos / 1000d, maxNanos / 1000d,
+				(bytesPerOp < 0) ? "n/a" : String.format("%.0f", bytesPerOp), gcCount, gcMillis);
+		}
+	}
+
+	/**
+	 * @param name
+	 * @param warmupIterations
+	 * @param iterations
+	 * @param op
+	 * @return Measurements of the 'iterations' runs of 'op' that followed the warmup runs
+	 */
+	public static Result run(String name, int warmupIterations, int iterations, Runnable op) {
+		for (int i = 0; i < warmupIterations; ++i) {
+			op.run();
+		}
+
+		Metrics.Histogram latencies = new Metrics.Histogram();
+		long gcCount = getGcCount(), gcMillis = getGcMillis();
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+
+		long opStart;
+		for (int i = 0; i < iterations; ++i) {
+			opStart = System.nanoTime();
+			op.run();
+			latencies.recordSince(opStart);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocatedAfter = getAllocatedBytes();
+
+		Result result = new Result();
+		result.name = name;
+		result.iterations = iterations;
+		result.opsPerSecond = iterations / (elapsed / 1e9);
+		result.p50Nanos = latencies.getPercentile(50);
+		result.p90Nanos = latencies.getPercentile(90);
+		result.p99Nanos = latencies.getPercentile(99);
+		result.maxNanos = latencies.getMax();
+		result.bytesPerOp = (allocated < 0 || allocatedAfter < 0) ? -1 : (double)(allocatedAfter - allocated) / iterations;
+		result.gcCount = getGcCount() - gcCount;
+		result.gcMillis = getGcMillis() - gcMillis;
+		return result;
+	}
+
+	/**
+	 * @return Bytes allocated so far by the current thread, or -1 if the JVM can't tell
+	 */
+	public static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+		if (!hotspotThreads.isThreadAllocatedMemorySupported()) return -1;
+		if (!hotspotThreads.isThreadAllocatedMemoryEnabled()) hotspotThreads.setThreadAllocatedMemoryEnabled(true);
+		return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	public static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+}
@@ -0,0 +1,302 @@
+package sketches;
+
+/**
+ * Finds connected blobs of foreground pixels, in place of
+ * blobDetection.BlobDetection.
+ *
+ * Pixels are labeled with union-find, one horizontal stripe per thread. Each
+ * component's root is the index of its first pixel in scan order, so labels
+ * from different stripes never collide and blobs always come out in the same
+ * order however many stripes there are. A component's area, bounds and
+ * first moments are accumulated at its root as pixels are labeled, and
+ * merged when components are; once the stripes are done, only the rows
+ * along their seams are left to join up.
+ *
+ * Components are 4-connected. Bounds and centroids are normalized to the
+ * frame, as BlobDetection's are.
+ */
+public class BlobFinder implements StripeExecutor.StripeTask {
+	public static class Blob {
+		// Bounds, from the left/top edge of the first pixel to the right/bottom edge of the last
+		public float xMin, xMax, yMin, yMax;
+		public float w, h;
+
+		// Centroid, at sub-pixel precision
+		public float x, y;
+
+		// In pixels
+		public int area;
+
+		// Index of the blob's first pixel, which labels it in getLabel()
+		int root;
+	}
+
+	private final int width;
+	private final int height;
+	private final StripeExecutor stripes;
+
+	// Indexed by pixel; only meaningful for foreground pixels, and for sums and bounds, only at roots
+	private final int[] parent;
+	private final int[] area;
+	private final long[] sumX;
+	private final long[] sumY;
+	private final int[] minX, maxX, minY, maxY;
+
+	// Roots created by each stripe, stored from the stripe's first pixel on
+	private final int[] created;
+	private final int[] createdCount;
+
+	private final byte[] ownMask;
+	private final Blob[] blobs;
+	private int blobCount;
+	private int minArea = 1;
+
+	// Arguments of the find() in progress
+	private byte[] mask;
+	private int[] pixels;
+	private int threshold;
+	private DirtyTiles tiles;
+
+	/**
+	 * @param width
+	 * @param height
+	 * @param stripes Executor to split frames up on
+	 * @param maxBlobs Most blobs to report; any more are ignored
+	 */
+	public BlobFinder(int width, int height, StripeExecutor stripes, int maxBlobs) {
+		this.width = width;
+		this.height = height;
+		this.stripes = stripes;
+
+		int size = width * height;
+		parent = new int[size];
+		area = new int[size];
+		sumX = new long[size];
+		sumY = new long[size];
+		minX = new int[size];
+		maxX = new int[size];
+		minY = new int[size];
+		maxY = new int[size];
+		created = new int[size];
+		createdCount = new int[stripes.getStripeCount()];
+		ownMask = new byte[size];
+
+		blobs = new Blob[maxBlobs];
+		for (int i = 0; i < maxBlobs; ++i) {
+			blobs[i] = new Blob();
+		}
+	}
+
+	/**
+	 * @param minArea Smallest blob to report, in pixels
+	 */
+	public void setMinArea(int minArea) {
+		this.minArea = Math.max(1, minArea);
+	}
+
+	public int getBlobCount() {
+		return blobCount;
+	}
+
+	/**
+	 * @param i
+	 * @return Blob 'i' of the last find(); only valid until the next one
+	 */
+	public Blob getBlob(int i) {
+		return blobs[i];
+	}
+
+	/**
+	 * @param mask Nonzero for foreground pixels, as written by BackgroundSubtractor
+	 * @return Number of blobs found
+	 */
+	public int find(byte[] mask) {
+		assert mask.length >= width * height : "Mask must be at least width x height";
+		this.mask = mask;
+		this.pixels = null;
+		this.tiles = null;
+		return find();
+	}
+
+	/**
+	 * Like find(byte[]), but skipping over the tiles with no foreground pixels.
+	 *
+	 * @param mask Nonzero for foreground pixels, as written by BackgroundSubtractor
+	 * @param tiles Tiles of the mask, with their foreground counts up to date
+	 * @return Number of blobs found
+	 */
+	public int find(byte[] mask, DirtyTiles tiles) {
+		assert mask.length >= width * height : "Mask must be at least width x height";
+		this.mask = mask;
+		this.pixels = null;
+		this.tiles = tiles;
+		return find();
+	}
+
+	/**
+	 * @param pixels Image whose bright pixels are foreground
+	 * @param threshold Brightness, from 0 to 1, above which a pixel is foreground
+	 * @return Number of blobs found
+	 */
+	public int find(int[] pixels, float threshold) {
+		assert pixels.length >= width * height : "Image must be at least width x height";
+		this.mask = ownMask;
+		this.pixels = pixels;
+		this.tiles = null;
+		this.threshold = Math.round(threshold * 255);
+		return find();
+	}
+
+	private int find() {
+		stripes.run(this, height);
+
+		// Join up components that cross from one stripe into the next
+		for (int stripe = 1; stripe < stripes.getStripeCount(); ++stripe) {
+			int y = stripes.getStripeStart(stripe, height);
+			if (y == 0 || y >= height) continue;
+			for (int i = y * width, end = i + width; i < end; ++i) {
+				if (mask[i] != 0 && mask[i - width] != 0) union(i, i - width);
+			}
+		}
+
+		blobCount = 0;
+		int start, root;
+		for (int stripe = 0; stripe < createdCount.length; ++stripe) {
+			start = stripes.getStripeStart(stripe, height) * width;
+			for (int i = start, end = start + createdCount[stripe]; i < end && blobCount < blobs.length; ++i) {
+				root = created[i];
+				// Roots that were merged into others no longer are
+				if (parent[root] == root && area[root] >= minArea) describe(root, blobs[blobCount++]);
+			}
+		}
+
+		mask = null;
+		pixels = null;
+		tiles = null;
+		return blobCount;
+	}
+
+	public void run(int stripe, int startRow, int endRow) {
+		byte[] mask = this.mask;
+		int[] pixels = this.pixels;
+		int threshold = this.threshold;
+		int[] parent = this.parent;
+		DirtyTiles tiles = this.tiles;
+		int tileSize = (tiles != null) ? tiles.getTileSize() : width;
+		int tileRowStart = 0;
+		int createdStart = startRow * width;
+		int createdEnd = createdStart;
+
+		int i, end, root, upRoot;
+		for (int y = startRow; y < endRow; ++y) {
+			if (pixels != null) {
+				for (i = y * width, end = i + width; i < end; ++i) {
+					mask[i] = (byte)((BackgroundSubtractor.luma(pixels[i]) > threshold) ? 1 : 0);
+				}
+			}
+
+			if (tiles != null) tileRowStart = (y / tileSize) * tiles.getColumns();
+
+			i = y * width;
+			for (int x = 0; x < width; ++x, ++i) {
+				// Empty tiles have nothing to label, and nothing for their neighbors to join up with
+				if (tiles != null && x % tileSize == 0 && tiles.getForeground(tileRowStart + x / tileSize) == 0) {
+					x += tileSize - 1;
+					i += tileSize - 1;
+					continue;
+				}
+				if (mask[i] == 0) continue;
+
+				root = (x > 0 && mask[i - 1] != 0) ? find(i - 1) : -1;
+				if (y > startRow && mask[i - width] != 0) {
+					upRoot = find(i - width);
+					root = (root < 0) ? upRoot : union(root, upRoot);
+				}
+
+				if (root < 0) {
+					parent[i] = i;
+					area[i] = 1;
+					sumX[i] = x;
+					sumY[i] = y;
+					minX[i] = maxX[i] = x;
+					minY[i] = maxY[i] = y;
+					created[createdEnd++] = i;
+				} else {
+					parent[i] = root;
+					++area[root];
+					sumX[root] += x;
+					sumY[root] += y;
+					if (x < minX[root]) minX[root] = x;
+					if (x > maxX[root]) maxX[root] = x;
+					// Scanning top to bottom, so y can only ever grow the bottom
+					if (y > maxY[root]) maxY[root] = y;
+				}
+			}
+		}
+		createdCount[stripe] = createdEnd - createdStart;
+	}
+
+	/**
+	 * @param i
+	 * @return Root of the component pixel 'i' is in
+	 */
+	private int find(int i) {
+		while (parent[i] != i) {
+			// Path halving
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Merge the components pixels 'a' and 'b' are in, into the one whose root comes first.
+	 *
+	 * @param a
+	 * @param b
+	 * @return Root of the merged component
+	 */
+	private int union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a == b) return a;
+		if (b < a) {
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+
+		parent[b] = a;
+		area[a] += area[b];
+		sumX[a] += sumX[b];
+		sumY[a] += sumY[b];
+		if (minX[b] < minX[a]) minX[a] = minX[b];
+		if (maxX[b] > maxX[a]) maxX[a] = maxX[b];
+		if (minY[b] < minY[a]) minY[a] = minY[b];
+		if (maxY[b] > maxY[a]) maxY[a] = maxY[b];
+		return a;
+	}
+
+	/**
+	 * @param pixel Index of a foreground pixel of the last find()
+	 * @return Label of the blob the pixel is in, to compare with other pixels'; valid until the next find()
+	 */
+	int getLabel(int pixel) {
+		return find(pixel);
+	}
+
+	private void describe(int root, Blob blob) {
+		blob.root = root;
+		blob.xMin = (float)minX[root] / width;
+		blob.xMax = (float)(maxX[root] + 1) / width;
+		blob.yMin = (float)minY[root] / height;
+		blob.yMax = (float)(maxY[root] + 1) / height;
+		blob.w = blob.xMax - blob.xMin;
+		blob.h = blob.yMax - blob.yMin;
+
+		// Moments are of pixel corners; pixel centers are half a pixel in
+		blob.x = ((float)sumX[root] / area[root] + 0.5f) / width;
+		blob.y = ((float)sumY[root] / area[root] + 0.5f) / height;
+		blob.area = area[root];
+	}
+}
@@ -0,0 +1,261 @@
+package sketches;
+
+/**
+ * Finds blobs coarse to fine: background subtraction and labeling run on a
+ * frame downsampled 2x or 4x, and only the regions around the blobs found
+ * there are subtracted again at full resolution, to pin down their bounds
+ * and centroids.
+ *
+ * At full resolution, blobs are 4-connected flood fills from the foreground
+ * pixels under each coarse blob, so a coarse blob that merged close blobs
+ * splits back into them, and noise next to it isn't counted as part of it.
+ * Each fill is confined to its coarse blob's bounds plus a coarse pixel all
+ * around, though, so a thin part of a blob that didn't survive downsampling
+ * is cut off where it leaves that region, and blobs with no part that
+ * survived aren't found at all; blobs also come out in coarse order, not
+ * BlobFinder's.
+ *
+ * Each level of the pyramid halves the one before it, averaging every 2 x 2
+ * block of pixels; all three channels are averaged at once, red and blue as
+ * two lanes of one int. Every level is built in place, in buffers allocated
+ * up front. Blobs too small to survive downsampling are missed, so the
+ * factor should stay well under the size of the smallest blob of interest.
+ */
+public class BlobPyramid implements StripeExecutor.StripeTask {
+	private final int width;
+	private final int height;
+	private final int factor;
+	private final StripeExecutor stripes;
+
+	// Level k is 1 / 2^k the size of the frame; level 0 is the frame itself
+	private final int[][] levels;
+	private final int[] levelWidths;
+	private final int[] levelHeights;
+	private final int coarseWidth;
+	private final int coarseHeight;
+	private final int[] coarseBackground;
+	private final byte[] coarseMask;
+
+	private final BackgroundSubtractor subtractor;
+	private final BackgroundSubtractor coarseSubtractor;
+	private final BlobFinder coarseFinder;
+
+	private final byte[] mask;
+	private final int[] regions;
+	private final int[] fill;
+	private final BlobFinder.Blob[] blobs;
+	private int blobCount;
+
+	// Level being built by the run() in progress
+	private int level;
+
+	/**
+	 * @param width
+	 * @param height
+	 * @param factor How much to downsample by: 2 or 4
+	 * @param subtractor Full-resolution subtractor, whose mode and threshold the coarse level uses too
+	 * @param stripes Executor to split frames up on
+	 * @param maxBlobs Most blobs to report; any more are ignored
+	 */
+	public BlobPyramid(int width, int height, int factor, BackgroundSubtractor subtractor, StripeExecutor stripes, int maxBlobs) {
+		assert factor == 2 || factor == 4 : "Factor must be 2 or 4";
+		this.width = width;
+		this.height = height;
+		this.factor = factor;
+		this.subtractor = subtractor;
+		this.stripes = stripes;
+
+		int levelCount = Integer.numberOfTrailingZeros(factor) + 1;
+		levels = new int[levelCount][];
+		levelWidths = new int[levelCount];
+		levelHeights = new int[levelCount];
+		levelWidths[0] = width;
+		levelHeights[0] = height;
+		for (int k = 1; k < levelCount; ++k) {
+			levelWidths[k] = levelWidths[k - 1] / 2;
+			levelHeights[k] = levelHeights[k - 1] / 2;
+			levels[k] = new int[levelWidths[k] * levelHeights[k]];
+		}
+		coarseWidth = levelWidths[levelCount - 1];
+		coarseHeight = levelHeights[levelCount - 1];
+		coarseBackground = new int[coarseWidth * coarseHeight];
+		coarseMask = new byte[coarseWidth * coarseHeight];
+
+		coarseSubtractor = new BackgroundSubtractor(coarseWidth, coarseHeight, stripes);
+		coarseFinder = new BlobFinder(coarseWidth, coarseHeight, stripes, maxBlobs);
+
+		mask = new byte[width * height];
+		fill = new int[width * height];
+		regions = new int[maxBlobs * 4];
+		blobs = new BlobFinder.Blob[maxBlobs];
+		for (int i = 0; i < maxBlobs; ++i) {
+			blobs[i] = new BlobFinder.Blob();
+		}
+	}
+
+	public int getFactor() {
+		return factor;
+	}
+
+	public int getBlobCount() {
+		return blobCount;
+	}
+
+	/**
+	 * @param i
+	 * @return Blob 'i' of the last find(), normalized to the full frame; only valid until the next one
+	 */
+	public BlobFinder.Blob getBlob(int i) {
+		return blobs[i];
+	}
+
+	/**
+	 * @param background Pixels of the new background frame
+	 */
+	public void setBackground(int[] background) {
+		downsample(background);
+		System.arraycopy(levels[levels.length - 1], 0, coarseBackground, 0, coarseBackground.length);
+	}
+
+	/**
+	 * @param frame Pixels of the current frame
+	 * @param background Pixels of the background frame, as last passed to setBackground()
+	 * @return Number of blobs found
+	 */
+	public int find(int[] frame, int[] background) {
+		downsample(frame);
+
+		coarseSubtractor.setMode(subtractor.getMode());
+		coarseSubtractor.setThreshold(subtractor.getThreshold());
+		coarseSubtractor.subtract(levels[levels.length - 1], coarseBackground, null, coarseMask);
+		int candidates = coarseFinder.find(coarseMask);
+
+		// Each candidate's bounds, a coarse pixel bigger all around, at full resolution
+		BlobFinder.Blob candidate;
+		int x0, y0, x1, y1;
+		for (int i = 0; i < candidates; ++i) {
+			candidate = coarseFinder.getBlob(i);
+			x0 = regions[i * 4] = Math.max(0, (Math.round(candidate.xMin * coarseWidth) - 1) * factor);
+			y0 = regions[i * 4 + 1] = Math.max(0, (Math.round(candidate.yMin * coarseHeight) - 1) * factor);
+			x1 = regions[i * 4 + 2] = Math.min(width, (Math.round(candidate.xMax * coarseWidth) + 1) * factor);
+			y1 = regions[i * 4 + 3] = Math.min(height, (Math.round(candidate.yMax * coarseHeight) + 1) * factor);
+			subtractor.subtract(frame, background, null, mask, x0, y0, x1, y1);
+		}
+
+		// Only once every region is subtracted, so fills can cross into regions that overlap
+		blobCount = 0;
+		for (int i = 0; i < candidates && blobCount < blobs.length; ++i) {
+			refine(i, coarseFinder.getBlob(i));
+		}
+		return blobCount;
+	}
+
+	public void run(int stripe, int startRow, int endRow) {
+		int[] source = levels[level - 1], destination = levels[level];
+		int sourceWidth = levelWidths[level - 1];
+		int destinationWidth = levelWidths[level];
+
+		int topLeft, topRight, bottomLeft, bottomRight, redBlue, green, s;
+		for (int y = startRow; y < endRow; ++y) {
+			s = y * 2 * sourceWidth;
+			for (int i = y * destinationWidth, end = i + destinationWidth; i < end; ++i, s += 2) {
+				topLeft = source[s];
+				topRight = source[s + 1];
+				bottomLeft = source[s + sourceWidth];
+				bottomRight = source[s + sourceWidth + 1];
+
+				// Four 8-bit values sum to at most 10 bits, so red and blue can't carry into each other
+				redBlue = (topLeft & 0xFF00FF) + (topRight & 0xFF00FF) + (bottomLeft & 0xFF00FF) + (bottomRight & 0xFF00FF);
+				green = (topLeft & 0xFF00) + (topRight & 0xFF00) + (bottomLeft & 0xFF00) + (bottomRight & 0xFF00);
+				destination[i] = 0xFF000000 | ((redBlue >> 2) & 0xFF00FF) | ((green >> 2) & 0xFF00);
+			}
+		}
+	}
+
+	private void downsample(int[] frame) {
+		levels[0] = frame;
+		for (level = 1; level < levels.length; ++level) {
+			stripes.run(this, levelHeights[level]);
+		}
+		levels[0] = null;
+	}
+
+	/**
+	 * Flood fill the full-resolution blobs under coarse blob 'i', from each of
+	 * its coarse pixels' foreground pixels that isn't already filled.
+	 *
+	 * @param i
+	 * @param candidate Coarse blob 'i'
+	 */
+	private void refine(int i, BlobFinder.Blob candidate) {
+		int label = candidate.root;
+		int cx0 = Math.round(candidate.xMin * coarseWidth), cx1 = Math.round(candidate.xMax * coarseWidth);
+		int cy0 = Math.round(candidate.yMin * coarseHeight), cy1 = Math.round(candidate.yMax * coarseHeight);
+
+		int c, p;
+		for (int cy = cy0; cy < cy1; ++cy) {
+			for (int cx = cx0; cx < cx1; ++cx) {
+				c = cy * coarseWidth + cx;
+				if (coarseMask[c] == 0 || coarseFinder.getLabel(c) != label) continue;
+
+				for (int y = cy * factor; y < (cy + 1) * factor; ++y) {
+					for (int x = cx * factor; x < (cx + 1) * factor; ++x) {
+						p = y * width + x;
+						if (mask[p] != 1) continue;
+						if (blobCount == blobs.length) return;
+						fill(i, p, blobs[blobCount++]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flood fill the foreground within region 'i' from pixel 'seed', marking it filled.
+	 *
+	 * @param i
+	 * @param seed
+	 * @param blob Where to describe what was filled
+	 */
+	private void fill(int i, int seed, BlobFinder.Blob blob) {
+		int x0 = regions[i * 4], y0 = regions[i * 4 + 1];
+		int x1 = regions[i * 4 + 2], y1 = regions[i * 4 + 3];
+
+		int area = 0;
+		long sumX = 0, sumY = 0;
+		int minX = x1, maxX = x0 - 1, minY = y1, maxY = y0 - 1;
+
+		// Pixels are marked 2 as they're pushed, so none is pushed twice
+		int top = 0;
+		fill[top++] = seed;
+		mask[seed] = 2;
+		int p, x, y;
+		while (top > 0) {
+			p = fill[--top];
+			x = p % width;
+			y = p / width;
+			++area;
+			sumX += x;
+			sumY += y;
+			if (x < minX) minX = x;
+			if (x > maxX) maxX = x;
+			if (y < minY) minY = y;
+			if (y > maxY) maxY = y;
+
+			if (x > x0 && mask[p - 1] == 1) { mask[p - 1] = 2; fill[top++] = p - 1; }
+			if (x < x1 - 1 && mask[p + 1] == 1) { mask[p + 1] = 2; fill[top++] = p + 1; }
+			if (y > y0 && mask[p - width] == 1) { mask[p - width] = 2; fill[top++] = p - width; }
+			if (y < y1 - 1 && mask[p + width] == 1) { mask[p + width] = 2; fill[top++] = p + width; }
+		}
+
+		blob.xMin = (float)minX / width;
+		blob.xMax = (float)(maxX + 1) / width;
+		blob.yMin = (float)minY / height;
+		blob.yMax = (float)(maxY + 1) / height;
+		blob.w = blob.xMax - blob.xMin;
+		blob.h = blob.yMax - blob.yMin;
+		blob.x = ((float)sumX / area + 0.5f) / width;
+		blob.y = ((float)sumY / area + 0.5f) / height;
+		blob.area = area;
+	}
+}
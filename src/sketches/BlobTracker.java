@@ -0,0 +1,229 @@
+package sketches;
+
+import java.util.Arrays;
+
+/**
+ * Follows blobs from frame to frame, giving each one a stable ID and an
+ * estimate of its velocity.
+ *
+ * Every update, each track's position is predicted forward to the new
+ * frame's capture time, and matched to the nearest unclaimed blob within
+ * the match distance, oldest tracks first. Blobs are bucketed into a grid of
+ * cells at least as wide as the match distance, so a track only ever looks at the
+ * blobs in the 3 x 3 cells around it, and matching takes time linear in the
+ * number of blobs. Tracks that go unmatched coast along their velocity for
+ * a few frames before they're dropped; blobs left unmatched start new
+ * tracks.
+ */
+public class BlobTracker {
+	public static class Track {
+		public int id;
+		public float x, y;
+
+		// Per second, smoothed
+		public float vx, vy;
+
+		// Frames it's been matched in, and frames in a row it's gone unmatched
+		public int age;
+		public int missed;
+
+		long seenNanos;
+	}
+
+	private final float width;
+	private final float height;
+	private final float maxDistance;
+	private final Track[] tracks;
+	private int trackCount;
+	private int nextId = 0;
+
+	private int maxMissed = 5;
+	private float smoothing = 0.5f;
+
+	// Blobs bucketed by cell: cellStart[c] to cellStart[c + 1] in cellBlobs are the blobs in cell c
+	private final int columns;
+	private final int rows;
+	private final int[] cellStart;
+	private final int[] cellBlobs;
+	private final int[] blobCells;
+	private final boolean[] claimed;
+
+	/**
+	 * @param width Width of the space blobs are in
+	 * @param height Height of the space blobs are in
+	 * @param maxDistance Furthest a blob can be from a track's predicted position and still be matched to it
+	 * @param maxTracks Most tracks to follow at once, and most blobs per update
+	 */
+	public BlobTracker(float width, float height, float maxDistance, int maxTracks) {
+		this.width = width;
+		this.height = height;
+		this.maxDistance = maxDistance;
+
+		tracks = new Track[maxTracks];
+		for (int i = 0; i < maxTracks; ++i) {
+			tracks[i] = new Track();
+		}
+
+		// Rounded down, so cells are never narrower than the match distance and a match can't be two cells away
+		columns = Math.max(1, (int)(width / maxDistance));
+		rows = Math.max(1, (int)(height / maxDistance));
+		cellStart = new int[columns * rows + 1];
+		cellBlobs = new int[maxTracks];
+		blobCells = new int[maxTracks];
+		claimed = new boolean[maxTracks];
+	}
+
+	/**
+	 * @param maxMissed Frames in a row a track may go unmatched before it's dropped
+	 */
+	public void setMaxMissed(int maxMissed) {
+		this.maxMissed = maxMissed;
+	}
+
+	/**
+	 * @param smoothing Weight of each new velocity measurement, from 0 (never change) to 1 (no smoothing)
+	 */
+	public void setSmoothing(float smoothing) {
+		this.smoothing = smoothing;
+	}
+
+	public int getTrackCount() {
+		return trackCount;
+	}
+
+	/**
+	 * @param i
+	 * @return Track 'i', oldest first; only valid until the next update()
+	 */
+	public Track getTrack(int i) {
+		return tracks[i];
+	}
+
+	/**
+	 * @param xs Blob positions
+	 * @param ys
+	 * @param count Number of blobs; any more than the tracker can follow are ignored
+	 * @param frameNanos When the frame the blobs are from was captured
+	 */
+	public void update(float[] xs, float[] ys, int count, long frameNanos) {
+		count = Math.min(count, tracks.length);
+		bucket(xs, ys, count);
+
+		Track track;
+		float dt, predictedX, predictedY, bestDistance, dx, dy, distance;
+		int best, column, row, blob;
+		for (int i = 0; i < trackCount; ++i) {
+			track = tracks[i];
+			dt = (frameNanos - track.seenNanos) / 1e9f;
+			predictedX = track.x + track.vx * dt;
+			predictedY = track.y + track.vy * dt;
+
+			best = -1;
+			bestDistance = maxDistance * maxDistance;
+			column = getColumn(predictedX);
+			row = getRow(predictedY);
+			for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); ++r) {
+				for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); ++c) {
+					for (int j = cellStart[r * columns + c]; j < cellStart[r * columns + c + 1]; ++j) {
+						blob = cellBlobs[j];
+						if (claimed[blob]) continue;
+						dx = xs[blob] - predictedX;
+						dy = ys[blob] - predictedY;
+						distance = dx * dx + dy * dy;
+						if (distance <= bestDistance) {
+							best = blob;
+							bestDistance = distance;
+						}
+					}
+				}
+			}
+
+			if (best >= 0) {
+				claimed[best] = true;
+				if (dt > 0 && track.age > 0) {
+					track.vx += smoothing * ((xs[best] - track.x) / dt - track.vx);
+					track.vy += smoothing * ((ys[best] - track.y) / dt - track.vy);
+				}
+				track.x = xs[best];
+				track.y = ys[best];
+				track.seenNanos = frameNanos;
+				++track.age;
+				track.missed = 0;
+			} else {
+				++track.missed;
+			}
+		}
+
+		// Drop tracks lost for too long, keeping the rest in order of age
+		int kept = 0;
+		for (int i = 0; i < trackCount; ++i) {
+			track = tracks[i];
+			if (track.missed > maxMissed) continue;
+			tracks[i] = tracks[kept];
+			tracks[kept++] = track;
+		}
+		trackCount = kept;
+
+		for (int i = 0; i < count && trackCount < tracks.length; ++i) {
+			if (claimed[i]) continue;
+			track = tracks[trackCount++];
+			track.id = nextId++;
+			track.x = xs[i];
+			track.y = ys[i];
+			track.vx = track.vy = 0;
+			track.age = 1;
+			track.missed = 0;
+			track.seenNanos = frameNanos;
+		}
+	}
+
+	/**
+	 * @param track
+	 * @param nanos Time to predict the track's position at
+	 * @return Predicted x position
+	 */
+	public float predictX(Track track, long nanos) {
+		return track.x + track.vx * ((nanos - track.seenNanos) / 1e9f);
+	}
+
+	/**
+	 * @param track
+	 * @param nanos Time to predict the track's position at
+	 * @return Predicted y position
+	 */
+	public float predictY(Track track, long nanos) {
+		return track.y + track.vy * ((nanos - track.seenNanos) / 1e9f);
+	}
+
+	/**
+	 * Counting sort of the blobs into cells.
+	 */
+	private void bucket(float[] xs, float[] ys, int count) {
+		int cells = columns * rows;
+		Arrays.fill(cellStart, 0);
+		for (int i = 0; i < count; ++i) {
+			blobCells[i] = getRow(ys[i]) * columns + getColumn(xs[i]);
+			++cellStart[blobCells[i]];
+			claimed[i] = false;
+		}
+
+		// Now the end of each cell...
+		for (int c = 1; c < cells; ++c) {
+			cellStart[c] += cellStart[c - 1];
+		}
+		cellStart[cells] = count;
+
+		// ...and after filling each cell from its end back, its start
+		for (int i = count - 1; i >= 0; --i) {
+			cellBlobs[--cellStart[blobCells[i]]] = i;
+		}
+	}
+
+	private int getColumn(float x) {
+		return Math.max(0, Math.min(columns - 1, (int)(x * columns / width)));
+	}
+
+	private int getRow(float y) {
+		return Math.max(0, Math.min(rows - 1, (int)(y * rows / height)));
+	}
+}
@@ -1,27 +1,59 @@
 package sketches;
 
+import java.io.File;
+import java.io.IOException;
+
 import processing.core.PApplet;
 import processing.core.PImage;
 
 import toxi.video.capture.SimpleCapture;
 import toxi.video.capture.JMFSimpleCapture;
 
-import blobDetection.BlobDetection;
-import blobDetection.Blob;
-
 import Jama.Matrix;
 
 public class BlobsPlayground extends PApplet {
 	private static final long serialVersionUID = 1L;
+	
+	private static final Metrics.Histogram FRAME_TIME = Metrics.histogram("blobs.frame");
+	private static final Metrics.Histogram SUBTRACT_TIME = Metrics.histogram("blobs.subtract");
+	private static final Metrics.Histogram DETECT_TIME = Metrics.histogram("blobs.detect");
+	private static final Metrics.Histogram TRACK_TIME = Metrics.histogram("blobs.track");
+	private static final Metrics.Histogram DRAW_TIME = Metrics.histogram("blobs.draw");
+	private static final Metrics.Gauge BLOB_COUNT = Metrics.gauge("blobs.count");
+	private static final Metrics.Gauge TRACK_COUNT = Metrics.gauge("blobs.tracks");
+	private static final Metrics.Gauge DIRTY_TILES = Metrics.gauge("blobs.tiles.dirty");
+	private static final Metrics.Histogram LATENCY = Metrics.histogram("blobs.latency");
 
 	String CAPTURE_DEVICE = "vfw:Microsoft WDM Image Capture (Win32):0";
 	int CAPTURE_WIDTH = 320;
 	int CAPTURE_HEIGHT = 240;
 	int CAPTURE_FPS = 90;
+	// Frame rate the device itself is asked for, which frames are grabbed at
+	int CAPTURE_DEVICE_FPS = 30;
+	
+	// Set blobs.replay to the path of a recording to play it back instead of capturing, at blobs.replay.fps (0 for as fast as possible)
+	String REPLAY_FILE = System.getProperty("blobs.replay");
+	int REPLAY_FPS = Integer.getInteger("blobs.replay.fps", CAPTURE_FPS);
 	boolean CAPTURE_FLIP_X = true;
 	boolean CAPTURE_FLIP_Y = false;
 	
 	float BLOB_THRESH = 0.075f;
+	int BLOB_MAX = 1000;
+	
+	// Width and height of the tiles in tiled mode, in capture pixels
+	int TILE_SIZE = 16;
+	// Only tiles with a pixel this much brighter or darker than before are processed again
+	float TILE_CHANGE_THRESH = 0.03f;
+	
+	// Downsampling of the coarse level blobs are first looked for on in pyramid mode, 2 or 4
+	int PYRAMID_FACTOR = 2;
+	
+	// Blobs smaller than this (in capture pixels) are noise as far as tracking's concerned
+	int TRACK_MIN_AREA = 16;
+	int TRACK_MAX = 50;
+	float TRACK_MAX_DISTANCE = 12;
+	// Furthest ahead markers are ever predicted, in case latency spikes
+	long PREDICT_MAX_NANOS = 100000000L;
 	
 	int SCREEN_WIDTH = 1280;
 	int SCREEN_HEIGHT = 1024;
@@ -33,13 +65,29 @@ public class BlobsPlayground extends PApplet {
 	int backgroundIndex = 0;
 
 	SimpleCapture capture;
+	CaptureRing captureRing;
+	CaptureRing.Frame currentFrame;
+	FrameRecorder recorder;
 	
-	BlobDetection bd;
+	BlobFinder blobFinder;
+	BlobPyramid pyramid;
+	// Blobs that shrink away at the coarse level are missed, and parts of blobs can be cut off; see BlobPyramid
+	boolean usePyramid = false;
+	DirtyTiles dirtyTiles;
+	// Off by default: clean tiles keep results that are up to TILE_CHANGE_THRESH out of date
+	boolean useDirtyTiles = false;
+	BlobTracker tracker;
+	private float[] trackXs;
+	private float[] trackYs;
+	boolean predict = true;
 	
-	private int[] diffPixels;
 	private int[] backgroundPixels;
+	private byte[] foregroundMask;
 	private boolean resetBackground;
 	
+	StripeExecutor stripes;
+	BackgroundSubtractor subtractor;
+	
 	private Matrix calibrationMatrix;
 	private double[][] rawCalibratedPoints;
 	
@@ -49,10 +97,15 @@ public class BlobsPlayground extends PApplet {
 	private double alphaX, betaX, deltaX;
 	private double alphaY, betaY, deltaY;
 	
+	// Fit a homography to all the calibration targets, rather than an affine transform to three of them
+	boolean homographyCalibration = true;
+	private HomographyMap homographyMap;
+	private float[] markerXs;
+	private float[] markerYs;
+	
 	boolean calibrated = false;
 	
-	float lastX = -1;
-	float lastY = -1;
+	MetricsHud hud;
 	
 	public static void main(String args[]) {
 		PApplet.main(new String[] { "--display=2", "--present", "sketches.BlobsPlayground" });
@@ -60,67 +113,154 @@ public class BlobsPlayground extends PApplet {
 
 	public void setup() {
 		size(SCREEN_WIDTH, SCREEN_HEIGHT, OPENGL);
-		capture = new JMFSimpleCapture();
+		if (REPLAY_FILE != null) {
+			capture = new ReplayCapture();
+		} else {
+			capture = new JMFSimpleCapture();
+		}
 
 //		JMFSimpleCapture.listDevices(); // short version
 
 		// this will dump all available details for each device and format
 //		JMFSimpleCapture.listDevices(System.out,true);
 
-		if (!capture.initVideo(CAPTURE_DEVICE, CAPTURE_WIDTH, CAPTURE_HEIGHT, 30)) {
+		boolean initialized = (REPLAY_FILE != null)
+			? capture.initVideo(REPLAY_FILE, CAPTURE_WIDTH, CAPTURE_HEIGHT, REPLAY_FPS)
+			: capture.initVideo(CAPTURE_DEVICE, CAPTURE_WIDTH, CAPTURE_HEIGHT, CAPTURE_DEVICE_FPS);
+		if (!initialized) {
 			println(capture.getError());
 			
 			// you might have to (re-)run the JMFRegistry application
 			// devices sometimes are unrecognized
 			System.exit(0);
 		}
-		
-		bd = new BlobDetection(CAPTURE_WIDTH, CAPTURE_HEIGHT);
-		bd.setPosDiscrimination(true);
-		bd.setThreshold(BLOB_THRESH);
+		captureRing = new CaptureRing(capture, CAPTURE_WIDTH, CAPTURE_HEIGHT, (REPLAY_FILE != null) ? REPLAY_FPS : CAPTURE_DEVICE_FPS, 3);
+		// Replays are only deterministic if every recorded frame is processed, once and in order
+		captureRing.setLossless(REPLAY_FILE != null);
+		captureRing.start();
 		
 		frameRate(CAPTURE_FPS);
 		
-		diffPixels = new int[CAPTURE_WIDTH * CAPTURE_HEIGHT];
 		backgroundPixels = new int[CAPTURE_WIDTH * CAPTURE_HEIGHT];
+		foregroundMask = new byte[CAPTURE_WIDTH * CAPTURE_HEIGHT];
 		resetBackground = true;
 		
-		rawCalibratedPoints = new double[][] {
-			{ -1, -1, 1},
-			{ -1, -1, 1},
-			{ -1, -1, 1}
-		};
+		stripes = new StripeExecutor("blobs-stripe", Runtime.getRuntime().availableProcessors());
+		subtractor = new BackgroundSubtractor(CAPTURE_WIDTH, CAPTURE_HEIGHT, stripes);
+		subtractor.setThreshold(BLOB_THRESH);
+//		subtractor.setMode(BackgroundSubtractor.LUMA);
+		blobFinder = new BlobFinder(CAPTURE_WIDTH, CAPTURE_HEIGHT, stripes, BLOB_MAX);
+		pyramid = new BlobPyramid(CAPTURE_WIDTH, CAPTURE_HEIGHT, PYRAMID_FACTOR, subtractor, stripes, BLOB_MAX);
+		dirtyTiles = new DirtyTiles(CAPTURE_WIDTH, CAPTURE_HEIGHT, TILE_SIZE, stripes);
+		dirtyTiles.setChangeThreshold(TILE_CHANGE_THRESH);
+		tracker = new BlobTracker(CAPTURE_WIDTH, CAPTURE_HEIGHT, TRACK_MAX_DISTANCE, TRACK_MAX);
+		trackXs = new float[TRACK_MAX];
+		trackYs = new float[TRACK_MAX];
 		
+		// The affine calibration uses just the first three targets
 		calibrationPoints = new double[][] {
 			{ width * 0.10, height * 0.90 },
 			{ width * 0.10, height * 0.10 },
-			{ width * 0.90, height * 0.10 }
+			{ width * 0.90, height * 0.10 },
+			{ width * 0.90, height * 0.90 },
+			{ width * 0.50, height * 0.50 },
+			{ width * 0.50, height * 0.10 },
+			{ width * 0.90, height * 0.50 },
+			{ width * 0.50, height * 0.90 },
+			{ width * 0.10, height * 0.50 }
 		};
 		calibrationIndex = 0;
 		
+		rawCalibratedPoints = new double[calibrationPoints.length][];
+		for (int i = 0; i < rawCalibratedPoints.length; ++i) {
+			rawCalibratedPoints[i] = new double[] { -1, -1, 1 };
+		}
+		homographyMap = new HomographyMap(CAPTURE_WIDTH, CAPTURE_HEIGHT);
+		markerXs = new float[TRACK_MAX];
+		markerYs = new float[TRACK_MAX];
+		
 		strokeWeight(3);
 		stroke(255, 0, 0);
 		noFill();
+		
+		hud = new MetricsHud(this);
 	}
 
 	public void draw() {
+		long frameStart = System.nanoTime();
 		if (!calibrated) background(backgroundColors[backgroundIndex]);
 		
-		PImage frame = capture.getFrame();
-		if (resetBackground) {
-			arraycopy(frame.pixels, backgroundPixels);
-			resetBackground = false;
+		// Always work on the newest captured frame; until there's a new one, keep showing the last one's blobs
+		CaptureRing.Frame newestFrame = captureRing.takeNewest();
+		if (newestFrame != null) {
+			if (currentFrame != null) captureRing.release(currentFrame);
+			currentFrame = newestFrame;
+		} else if (currentFrame == null) {
+			FRAME_TIME.recordSince(frameStart);
+			hud.draw();
+			return;
 		}
+		PImage frame = currentFrame.image;
 		
-		subtractBackground(frame.pixels);
-		bd.computeBlobs(diffPixels);
-		Blob blob;
-		int numBlobs = bd.getBlobNb();
+		long phaseStart;
+		if (newestFrame != null) {
+			if (resetBackground) {
+				arraycopy(frame.pixels, backgroundPixels);
+				resetBackground = false;
+				dirtyTiles.markAllDirty();
+				pyramid.setBackground(backgroundPixels);
+			}
+			
+			if (recorder != null) {
+				try {
+					recorder.write(frame.pixels, currentFrame.capturedNanos);
+				} catch (IOException e) {
+					e.printStackTrace();
+					stopRecording();
+				}
+			}
+			
+			if (usePyramid) {
+				// Subtraction's mostly at the coarse level, so it's all counted as detection
+				phaseStart = System.nanoTime();
+				pyramid.find(frame.pixels, backgroundPixels);
+				DETECT_TIME.recordSince(phaseStart);
+			} else if (useDirtyTiles) {
+				// Only redo the tiles that changed; if none did, the last frame's blobs still stand
+				phaseStart = System.nanoTime();
+				dirtyTiles.update(frame.pixels);
+				int dirtyCount = dirtyTiles.getDirtyCount();
+				DIRTY_TILES.set(dirtyCount);
+				if (dirtyCount > 0) subtractor.subtract(frame.pixels, backgroundPixels, null, foregroundMask, dirtyTiles);
+				SUBTRACT_TIME.recordSince(phaseStart);
+				
+				phaseStart = System.nanoTime();
+				if (dirtyCount > 0) blobFinder.find(foregroundMask, dirtyTiles);
+				DETECT_TIME.recordSince(phaseStart);
+			} else {
+				phaseStart = System.nanoTime();
+				subtractor.subtract(frame.pixels, backgroundPixels, null, foregroundMask);
+				SUBTRACT_TIME.recordSince(phaseStart);
+				
+				phaseStart = System.nanoTime();
+				blobFinder.find(foregroundMask);
+				DETECT_TIME.recordSince(phaseStart);
+			}
+			
+			phaseStart = System.nanoTime();
+			updateTracks();
+			TRACK_TIME.recordSince(phaseStart);
+		}
+		
+		phaseStart = System.nanoTime();
+		BlobFinder.Blob blob;
+		int numBlobs = getBlobCount();
+		BLOB_COUNT.set(numBlobs);
 		
 		if (calibrationIndex > 0 && numBlobs > 0) {
-			blob = bd.getBlob(0);
-			rawCalibratedPoints[calibrationIndex - 1][0] = ((blob.xMax + blob.xMin) / 2) * CAPTURE_WIDTH;
-			rawCalibratedPoints[calibrationIndex - 1][1] = ((blob.yMax + blob.yMin) / 2) * CAPTURE_HEIGHT;
+			blob = getBlob(0);
+			rawCalibratedPoints[calibrationIndex - 1][0] = blob.x * CAPTURE_WIDTH;
+			rawCalibratedPoints[calibrationIndex - 1][1] = blob.y * CAPTURE_HEIGHT;
 			
 			calcCalibrationCoefficients();
 			
@@ -152,7 +292,7 @@ public class BlobsPlayground extends PApplet {
 			
 			if (!calibrated) {
 				for (int i = 0; i < numBlobs; ++i) {
-					blob = bd.getBlob(i);
+					blob = getBlob(i);
 					
 					rect(
 						blob.xMin * CAPTURE_WIDTH, blob.yMin * CAPTURE_HEIGHT,
@@ -164,52 +304,149 @@ public class BlobsPlayground extends PApplet {
 		popMatrix();
 		
 		if (calibrated) {
-			for (int i = 0; i < numBlobs; ++i) {
-				blob = bd.getBlob(i);
-				
-				float rawX = ((blob.xMin + blob.xMax) / 2) * CAPTURE_WIDTH;
-				float rawY = ((blob.yMin + blob.yMax) / 2) * CAPTURE_HEIGHT;
-				float screenX = (float)alphaX * rawX + (float)betaX * rawY + (float)deltaX;
-				float screenY = (float)alphaY * rawX + (float)betaY * rawY + (float)deltaY;
-				
-				ellipse(screenX, screenY, 40, 40);
-				
-				if (lastX >= 0 && lastY >= 0) {
-//					line(lastX, lastY, screenX, screenY);
-				}
-				
-				lastX = screenX;
-				lastY = screenY;
+			// Draw markers where people will be by the time they see them, not where the camera saw them
+			long horizon = predict ? Math.min(LATENCY.getPercentile(50), PREDICT_MAX_NANOS) : 0;
+			BlobTracker.Track track;
+			int markerCount = tracker.getTrackCount();
+			for (int i = 0; i < markerCount; ++i) {
+				track = tracker.getTrack(i);
+				markerXs[i] = tracker.predictX(track, currentFrame.capturedNanos + horizon);
+				markerYs[i] = tracker.predictY(track, currentFrame.capturedNanos + horizon);
+			}
+			mapToScreen(markerXs, markerYs, markerCount);
+			
+			for (int i = 0; i < markerCount; ++i) {
+				ellipse(markerXs[i], markerYs[i], 40, 40);
 			}
 		}
 		
 		if (!calibrated) drawCalibrationTargets();
+		DRAW_TIME.recordSince(phaseStart);
+		
+		// From the moment the camera delivered the frame to the moment its blobs are drawn
+		if (newestFrame != null) LATENCY.recordSince(currentFrame.capturedNanos);
+		
+		FRAME_TIME.recordSince(frameStart);
+		hud.draw();
 	}
 
 	public void stop() {
+		stopRecording();
+		captureRing.shutdown();
 		capture.shutdown();
+		stripes.shutdown();
 		super.stop();
 	}
 	
 	public void keyPressed() {
-		if (key == '1') {
-			calibrationIndex = 1;
-		} else if (key == '2') {
-			calibrationIndex = 2;
-		} else if (key == '3') {
-			calibrationIndex = 3;
+		if (key >= '1' && key <= '9') {
+			if (key - '0' <= getCalibrationTargetCount()) calibrationIndex = key - '0';
+		} else if (key == 'h') {
+			homographyCalibration = !homographyCalibration;
+			calibrated = false;
 		} else if (key == 'b') {
 			backgroundIndex = (backgroundIndex + 1) % backgroundColors.length;
 		} else if (key == 'c') {
 			calibrated = false;
+		} else if (key == 'm') {
+			hud.toggle();
+		} else if (key == 'l') {
+			subtractor.setMode((subtractor.getMode() == BackgroundSubtractor.LUMA) ? BackgroundSubtractor.RGB : BackgroundSubtractor.LUMA);
+			dirtyTiles.markAllDirty();
+		} else if (key == 'd') {
+			useDirtyTiles = !useDirtyTiles;
+			// The mask and tile counts went stale while the other mode had them
+			dirtyTiles.markAllDirty();
+		} else if (key == 'y') {
+			usePyramid = !usePyramid;
+			// Tiled mode's mask went stale while the pyramid was in use
+			dirtyTiles.markAllDirty();
+		} else if (key == 'p') {
+			predict = !predict;
+		} else if (key == 'r') {
+			if (recorder == null) {
+				startRecording();
+			} else {
+				stopRecording();
+			}
 		} else {
 			resetBackground = true;
 		}
 	}
 	
+	/**
+	 * @return Number of blobs in the current frame, from whichever detector found them
+	 */
+	private int getBlobCount() {
+		return usePyramid ? pyramid.getBlobCount() : blobFinder.getBlobCount();
+	}
+	
+	private BlobFinder.Blob getBlob(int i) {
+		return usePyramid ? pyramid.getBlob(i) : blobFinder.getBlob(i);
+	}
+	
+	private void updateTracks() {
+		int count = 0;
+		BlobFinder.Blob blob;
+		for (int i = 0; i < getBlobCount() && count < TRACK_MAX; ++i) {
+			blob = getBlob(i);
+			if (blob.area < TRACK_MIN_AREA) continue;
+			trackXs[count] = blob.x * CAPTURE_WIDTH;
+			trackYs[count] = blob.y * CAPTURE_HEIGHT;
+			++count;
+		}
+		tracker.update(trackXs, trackYs, count, currentFrame.capturedNanos);
+		TRACK_COUNT.set(tracker.getTrackCount());
+	}
+	
+	private void startRecording() {
+		File file = new File(sketchPath("recordings/blobs-" + System.currentTimeMillis() + ".rec"));
+		try {
+			recorder = new FrameRecorder(file, CAPTURE_WIDTH, CAPTURE_HEIGHT);
+			println("Recording to " + file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void stopRecording() {
+		if (recorder == null) return;
+		try {
+			recorder.close();
+			println("Recorded " + recorder.getFrameCount() + " frames");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		recorder = null;
+	}
+	
+	/**
+	 * @param xs Capture x of each point, replaced by its screen x
+	 * @param ys Capture y of each point, replaced by its screen y
+	 * @param count
+	 */
+	private void mapToScreen(float[] xs, float[] ys, int count) {
+		if (homographyCalibration) {
+			homographyMap.map(xs, ys, count, xs, ys);
+			return;
+		}
+		
+		float rawX, rawY;
+		for (int i = 0; i < count; ++i) {
+			rawX = xs[i];
+			rawY = ys[i];
+			xs[i] = (float)alphaX * rawX + (float)betaX * rawY + (float)deltaX;
+			ys[i] = (float)alphaY * rawX + (float)betaY * rawY + (float)deltaY;
+		}
+	}
+	
+	private int getCalibrationTargetCount() {
+		return homographyCalibration ? calibrationPoints.length : 3;
+	}
+	
 	private void drawCalibrationTargets() {
 		float diameter = 40;
-		for (int i = 0; i < calibrationPoints.length; ++i) {
+		for (int i = 0; i < getCalibrationTargetCount(); ++i) {
 			ellipse((float)calibrationPoints[i][0], (float)calibrationPoints[i][1], diameter * 0.25f, diameter * 0.25f);
 			ellipse((float)calibrationPoints[i][0], (float)calibrationPoints[i][1], diameter * 0.50f, diameter * 0.50f);
 			ellipse((float)calibrationPoints[i][0], (float)calibrationPoints[i][1], diameter * 0.75f, diameter * 0.75f);
@@ -217,37 +454,9 @@ public class BlobsPlayground extends PApplet {
 		}
 	}
 	
-	private void subtractBackground(int[] frame) {
-		// For each pixel in the video frame...
-		for (int i = 0; i < frame.length; ++i) {
-			// Fetch the current color in that location, and also the color
-			// of the background in that spot
-			int currColor = frame[i];
-			int bkgdColor = backgroundPixels[i];
-			
-			// Extract the components of the current pixel's color
-			int currR = (currColor >> 16) & 0xFF;
-			int currG = (currColor >> 8) & 0xFF;
-			int currB = currColor & 0xFF;
-			
-			// Extract the components of the background pixel's color
-			int bkgdR = (bkgdColor >> 16) & 0xFF;
-			int bkgdG = (bkgdColor >> 8) & 0xFF;
-			int bkgdB = bkgdColor & 0xFF;
-			
-			// Compute the difference of the red, green, and blue values
-			int diffR = abs(currR - bkgdR);
-			int diffG = abs(currG - bkgdG);
-			int diffB = abs(currB - bkgdB);
-			
-			// Write the difference to the difference-image array
-			diffPixels[i] = 0xFF000000 | (diffR << 16) | (diffG << 8) | diffB;
-		}
-	}
-	
 	private void calcCalibrationCoefficients() {
 		boolean unset = false;
-		for (int i = 0; i < rawCalibratedPoints.length; ++i) {
+		for (int i = 0; i < getCalibrationTargetCount(); ++i) {
 			for (int j = 0; j < rawCalibratedPoints[i].length; ++j) {
 				if (rawCalibratedPoints[i][j] < 0) {
 					unset = true;
@@ -257,7 +466,10 @@ public class BlobsPlayground extends PApplet {
 			if (unset) break;
 		}
 		
-		if (!unset) {
+		if (!unset && homographyCalibration) {
+			calibrated = homographyMap.fit(rawCalibratedPoints, calibrationPoints, getCalibrationTargetCount());
+			if (!calibrated) println("Calibration targets don't pin down a homography; recalibrate them");
+		} else if (!unset) {
 			Matrix xPoints = new Matrix(new double[][] {
 				{ calibrationPoints[0][0] },
 				{ calibrationPoints[1][0] },
@@ -268,7 +480,11 @@ public class BlobsPlayground extends PApplet {
 				{ calibrationPoints[1][1] },
 				{ calibrationPoints[2][1] }
 			});
-			calibrationMatrix = new Matrix(rawCalibratedPoints);
+			calibrationMatrix = new Matrix(new double[][] {
+				rawCalibratedPoints[0],
+				rawCalibratedPoints[1],
+				rawCalibratedPoints[2]
+			});
 			
 			Matrix inverse = calibrationMatrix.inverse();
 			Matrix xCoef = inverse.times(xPoints);
@@ -0,0 +1,206 @@
+package sketches;
+
+import processing.core.PImage;
+
+import toxi.video.capture.SimpleCapture;
+
+/**
+ * Grabs frames from a SimpleCapture on a thread of its own, into a ring of
+ * preallocated frames.
+ *
+ * The capture thread never waits for the animation thread: when every frame
+ * in the ring is full, the oldest one not being processed is dropped and
+ * reused. The animation thread always takes the newest frame, dropping any
+ * older ones it never got to, so processing never falls behind the camera.
+ * Grabs are paced to the device's frame period: a device that hands back its
+ * latest buffer without waiting would otherwise be copied over and over, with
+ * each copy counted and timed as a new frame.
+ * Every frame carries the time it was captured, so its latency can be
+ * measured all the way through to when its results are drawn.
+ *
+ * In lossless mode, for recordings rather than live devices, the capture
+ * thread waits instead: each frame is published only once the one before
+ * it has been taken, so every frame is taken exactly once, in order.
+ */
+public class CaptureRing implements Runnable {
+	private static final int FREE = 0;
+	private static final int WRITING = 1;
+	private static final int READY = 2;
+	private static final int HELD = 3;
+
+	private static final Metrics.Counter CAPTURED = Metrics.counter("capture.frames");
+	private static final Metrics.Counter DROPPED = Metrics.counter("capture.frames.dropped");
+	private static final Metrics.Histogram GRAB_TIME = Metrics.histogram("capture.grab");
+	private static final Metrics.Histogram QUEUE_TIME = Metrics.histogram("capture.queue");
+
+	public static class Frame {
+		public final PImage image;
+		public final int[] pixels;
+
+		// System.nanoTime() at the moment the frame came out of the capture device
+		public long capturedNanos;
+		public long sequence;
+
+		private int state = FREE;
+
+		Frame(int width, int height) {
+			image = new PImage(width, height);
+			pixels = image.pixels;
+		}
+	}
+
+	private final SimpleCapture capture;
+	private final long frameNanos;
+	private final Frame[] frames;
+	private long nextSequence = 0;
+	private boolean lossless = false;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * @param capture Capture device, already initialized
+	 * @param width
+	 * @param height
+	 * @param fps Frames per second the device delivers, or 0 if getFrame() itself waits for each one
+	 * @param size Number of frames in the ring; at least three, so one can be written while another is held and a third is ready
+	 */
+	public CaptureRing(SimpleCapture capture, int width, int height, int fps, int size) {
+		this.capture = capture;
+		this.frameNanos = (fps > 0) ? 1000000000L / fps : 0;
+		this.frames = new Frame[Math.max(3, size)];
+		for (int i = 0; i < frames.length; ++i) {
+			frames[i] = new Frame(width, height);
+		}
+	}
+
+	/**
+	 * @param lossless Wait for each frame to be taken before publishing the next, rather than dropping frames; set before start()
+	 */
+	public void setLossless(boolean lossless) {
+		this.lossless = lossless;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "capture");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void shutdown() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {}
+		}
+	}
+
+	public void run() {
+		PImage grabbed;
+		Frame frame;
+		long grabStart, wait;
+		long nextGrabNanos = System.nanoTime();
+		while (running) {
+			wait = nextGrabNanos - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+				} catch (InterruptedException e) {
+					continue;
+				}
+			}
+			// Don't try to catch up on frames a slow grab missed
+			nextGrabNanos = Math.max(nextGrabNanos + frameNanos, System.nanoTime());
+
+			grabStart = System.nanoTime();
+			grabbed = capture.getFrame();
+			if (grabbed == null || grabbed.pixels == null) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {}
+				continue;
+			}
+			GRAB_TIME.recordSince(grabStart);
+
+			try {
+				frame = claim();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			frame.capturedNanos = System.nanoTime();
+			System.arraycopy(grabbed.pixels, 0, frame.pixels, 0, Math.min(grabbed.pixels.length, frame.pixels.length));
+			publish(frame);
+			CAPTURED.increment();
+		}
+	}
+
+	/**
+	 * @return Newest frame captured since the last call, now held by the caller until release()d, or null if there isn't one
+	 */
+	public synchronized Frame takeNewest() {
+		Frame newest = null;
+		for (Frame frame : frames) {
+			if (frame.state == READY && (newest == null || frame.sequence > newest.sequence)) newest = frame;
+		}
+		if (newest == null) return null;
+
+		// Anything older was never going to be processed
+		for (Frame frame : frames) {
+			if (frame.state == READY && frame != newest) {
+				frame.state = FREE;
+				DROPPED.increment();
+			}
+		}
+		newest.state = HELD;
+		if (lossless) notifyAll();
+		newest.image.updatePixels();
+		QUEUE_TIME.recordSince(newest.capturedNanos);
+		return newest;
+	}
+
+	/**
+	 * @param frame Frame from takeNewest() that the caller is done with
+	 */
+	public synchronized void release(Frame frame) {
+		assert frame.state == HELD : "Only held frames can be released";
+		frame.state = FREE;
+	}
+
+	/**
+	 * @return A free frame to write into or, if there aren't any, the oldest ready one
+	 * @throws InterruptedException If interrupted while waiting for the last frame to be taken, in lossless mode
+	 */
+	private synchronized Frame claim() throws InterruptedException {
+		while (lossless && hasReady()) {
+			wait();
+		}
+
+		Frame claimed = null;
+		for (Frame frame : frames) {
+			if (frame.state == FREE) {
+				claimed = frame;
+				break;
+			}
+			if (frame.state == READY && (claimed == null || frame.sequence < claimed.sequence)) claimed = frame;
+		}
+		assert claimed != null : "Ring must have a frame that's neither held nor being written";
+		if (claimed.state == READY) DROPPED.increment();
+		claimed.state = WRITING;
+		return claimed;
+	}
+
+	private boolean hasReady() {
+		for (Frame frame : frames) {
+			if (frame.state == READY) return true;
+		}
+		return false;
+	}
+
+	private synchronized void publish(Frame frame) {
+		frame.sequence = nextSequence++;
+		frame.state = READY;
+	}
+}
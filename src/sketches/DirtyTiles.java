@@ -0,0 +1,179 @@
+package sketches;
+
+/**
+ * Splits frames into square tiles and finds the ones that have changed, so
+ * per-pixel work can be limited to them.
+ *
+ * Each tile keeps a reference copy of its pixels from the last time it was
+ * found dirty. A tile is dirty when any of its pixels differs in brightness
+ * from the reference by more than the change threshold; comparing against
+ * the reference rather than the previous frame means slow changes still add
+ * up to a dirty tile eventually.
+ *
+ * Results in clean tiles are those of their reference, so they're only
+ * exact with a change threshold of 0: a pixel that drifts across the
+ * foreground threshold by less than the change threshold isn't picked up
+ * until its tile is dirty for some other reason. Checking only every few
+ * pixels (setSampleStep()) is cheaper still, but the sample grid only
+ * shifts by one pixel a frame, so a change between samples can go unseen
+ * for up to step x step frames.
+ *
+ * Tiles also carry a count of their foreground pixels, kept up to date by
+ * whatever processes them (BackgroundSubtractor), so tiles with none can be
+ * skipped by later stages (BlobFinder) too.
+ */
+public class DirtyTiles implements StripeExecutor.StripeTask {
+	private final int width;
+	private final int height;
+	private final int tileSize;
+	private final int columns;
+	private final int rows;
+	private final StripeExecutor stripes;
+
+	private final int[] reference;
+	private final boolean[] dirty;
+	private final int[] foreground;
+	private final int[] stripeDirty;
+
+	private int sampleStep = 1;
+	private int changeThreshold = 8;
+	private int phase = 0;
+	private boolean allDirty;
+
+	// Argument of the update() in progress
+	private int[] frame;
+
+	/**
+	 * @param width
+	 * @param height
+	 * @param tileSize Width and height of the tiles, in pixels
+	 * @param stripes Executor to split frames up on
+	 */
+	public DirtyTiles(int width, int height, int tileSize, StripeExecutor stripes) {
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.columns = (width + tileSize - 1) / tileSize;
+		this.rows = (height + tileSize - 1) / tileSize;
+		this.stripes = stripes;
+
+		reference = new int[width * height];
+		dirty = new boolean[columns * rows];
+		foreground = new int[columns * rows];
+		stripeDirty = new int[stripes.getStripeCount()];
+		markAllDirty();
+	}
+
+	public int getTileSize() { return tileSize; }
+
+	public int getColumns() { return columns; }
+
+	public int getRows() { return rows; }
+
+	/**
+	 * @param threshold Difference in brightness, from 0 to 1, over which a sample pixel makes its tile dirty
+	 */
+	public void setChangeThreshold(float threshold) {
+		this.changeThreshold = Math.round(threshold * 255);
+	}
+
+	/**
+	 * @param step Distance between sample pixels, across and down; 1, the default, checks every pixel
+	 */
+	public void setSampleStep(int step) {
+		this.sampleStep = Math.max(1, Math.min(step, tileSize));
+	}
+
+	/**
+	 * @param tile Index of the tile, row by row
+	 * @return Whether the tile changed in the last update()
+	 */
+	public boolean isDirty(int tile) {
+		return dirty[tile];
+	}
+
+	/**
+	 * @param tile
+	 * @return Foreground pixels in the tile, as last set
+	 */
+	public int getForeground(int tile) {
+		return foreground[tile];
+	}
+
+	/**
+	 * @param tile
+	 * @param count
+	 */
+	public void setForeground(int tile, int count) {
+		foreground[tile] = count;
+	}
+
+	/**
+	 * @return Number of tiles that changed in the last update()
+	 */
+	public int getDirtyCount() {
+		int count = 0;
+		for (int stripeCount : stripeDirty) count += stripeCount;
+		return count;
+	}
+
+	/**
+	 * Make the next update() find every tile dirty, as when the background changes.
+	 */
+	public void markAllDirty() {
+		allDirty = true;
+	}
+
+	/**
+	 * Find the tiles that have changed in 'frame', and make it their reference.
+	 *
+	 * @param frame
+	 */
+	public void update(int[] frame) {
+		assert frame.length >= width * height : "Frame must be at least width x height";
+		this.frame = frame;
+		stripes.run(this, rows);
+		this.frame = null;
+		allDirty = false;
+		phase = (phase + 1) % (sampleStep * sampleStep);
+	}
+
+	public void run(int stripe, int startRow, int endRow) {
+		int[] frame = this.frame, reference = this.reference;
+		boolean allDirty = this.allDirty;
+		int offsetX = phase % sampleStep;
+		int offsetY = phase / sampleStep;
+		int changed = 0;
+
+		int x0, x1, y0, y1, difference;
+		boolean tileDirty;
+		for (int row = startRow; row < endRow; ++row) {
+			y0 = row * tileSize;
+			y1 = Math.min(y0 + tileSize, height);
+			for (int column = 0; column < columns; ++column) {
+				x0 = column * tileSize;
+				x1 = Math.min(x0 + tileSize, width);
+
+				tileDirty = allDirty;
+				for (int y = y0 + offsetY; y < y1 && !tileDirty; y += sampleStep) {
+					for (int i = y * width + x0 + offsetX, end = y * width + x1; i < end; i += sampleStep) {
+						difference = BackgroundSubtractor.luma(frame[i]) - BackgroundSubtractor.luma(reference[i]);
+						if (difference > changeThreshold || -difference > changeThreshold) {
+							tileDirty = true;
+							break;
+						}
+					}
+				}
+
+				dirty[row * columns + column] = tileDirty;
+				if (tileDirty) {
+					++changed;
+					for (int y = y0; y < y1; ++y) {
+						System.arraycopy(frame, y * width + x0, reference, y * width + x0, x1 - x0);
+					}
+				}
+			}
+		}
+		stripeDirty[stripe] = changed;
+	}
+}
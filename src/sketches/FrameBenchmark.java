@@ -0,0 +1,88 @@
+package sketches;
+
+import processing.core.PApplet;
+
+/**
+ * Runs a sketch's setup() and draw() for a fixed number of frames against
+ * an offscreen software renderer, and reports frame-time percentiles,
+ * allocation and garbage collection.
+ *
+ * Usage: FrameBenchmark [-sketch WordsSpace|SubText|TextStencil|TextMask|GeoPlayground]
+ *        [-width N] [-height N] [-renderer P3D|JAVA2D] [-warmup N] [-frames N] [-seed N]
+ *
+ * The size, renderer and seed are handed to the sketch through
+ * SketchSettings. Frames are driven straight from this thread, with no
+ * window, animation thread or frame rate limit, so every frame is as fast as
+ * the sketch can draw it. Bytes per frame only count allocation on this
+ * thread; sketches that build words on background threads allocate more.
+ * The seed fixes which words get built, but not which frame they first
+ * appear on (see SketchSettings).
+ *
+ * A PApplet is still an AWT component, so it needs a display to be created
+ * on, but any display will do (Xvfb included); no GPU is used.
+ */
+public class FrameBenchmark {
+	public static void main(String args[]) throws Exception {
+		String sketchName = "WordsSpace";
+		int width = 800;
+		int height = 600;
+		String renderer = PApplet.P3D;
+		int warmup = 120;
+		int frames = 600;
+		long seed = 1;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-sketch")) sketchName = args[i + 1];
+			else if (args[i].equals("-width")) width = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-height")) height = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-renderer")) renderer = getRenderer(args[i + 1]);
+			else if (args[i].equals("-warmup")) warmup = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-frames")) frames = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-seed")) seed = Long.parseLong(args[i + 1]);
+		}
+
+		// Must be set before the sketch class is loaded, for its static Randoms to pick up the seed
+		System.setProperty(SketchSettings.RENDERER_PROPERTY, renderer);
+		System.setProperty(SketchSettings.WIDTH_PROPERTY, Integer.toString(width));
+		System.setProperty(SketchSettings.HEIGHT_PROPERTY, Integer.toString(height));
+		System.setProperty(SketchSettings.SEED_PROPERTY, Long.toString(seed));
+
+		final PApplet sketch = (PApplet)Class.forName(FrameBenchmark.class.getPackage().getName() + "." + sketchName).getConstructor().newInstance();
+		sketch.sketchPath = System.getProperty("user.dir");
+		sketch.randomSeed(seed);
+		sketch.noiseSeed(seed);
+
+		// Stands in for PApplet.init(): make the renderer now, so the size() call in setup() finds it already in place
+		sketch.size(width, height, renderer);
+		sketch.g.beginDraw();
+		sketch.setup();
+		sketch.g.endDraw();
+		sketch.frameCount = 1;
+
+		Benchmark.Result result = Benchmark.run(sketchName + " " + width + "x" + height, warmup, frames, new Runnable() {
+			public void run() {
+				sketch.g.beginDraw();
+				sketch.draw();
+				sketch.g.endDraw();
+				++sketch.frameCount;
+			}
+		});
+		sketch.stop();
+
+		System.out.println(Benchmark.Result.getHeader());
+		System.out.println(result);
+		System.exit(0);
+	}
+
+	/**
+	 * @param name
+	 * @return Renderer class for one of Processing's renderer names, or 'name' itself if it's already a class name
+	 */
+	private static String getRenderer(String name) {
+		if (name.equalsIgnoreCase("P3D")) return PApplet.P3D;
+		if (name.equalsIgnoreCase("JAVA2D")) return PApplet.JAVA2D;
+		if (name.equalsIgnoreCase("P2D")) return PApplet.P2D;
+		if (name.equalsIgnoreCase("OPENGL")) return PApplet.OPENGL;
+		return name;
+	}
+}
@@ -0,0 +1,95 @@
+package sketches;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes captured frames to a recording that ReplayCapture can play back.
+ *
+ * A recording is a header (MAGIC, VERSION, width, height) followed by
+ * fixed-size frames, each the frame's capture time in nanoseconds, relative
+ * to the first frame, and then its ARGB pixels, row by row; everything is
+ * big-endian. Since frames are all the same size, a recording cut short
+ * (by a crash, say) is still readable up to its last whole frame.
+ */
+public class FrameRecorder {
+	static final int MAGIC = 0x424C4252; // "BLBR"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+
+	private final int width;
+	private final int height;
+	private final FileOutputStream out;
+	private final FileChannel channel;
+	private final ByteBuffer frameBuffer;
+
+	// System.nanoTime() has an arbitrary origin, so any value, even a negative one, can be the first frame's
+	private long firstNanos;
+	private int frameCount = 0;
+
+	/**
+	 * @param file
+	 * @param width
+	 * @param height
+	 * @throws IOException
+	 */
+	public FrameRecorder(File file, int width, int height) throws IOException {
+		this.width = width;
+		this.height = height;
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory()) directory.mkdirs();
+
+		out = new FileOutputStream(file);
+		channel = out.getChannel();
+		frameBuffer = ByteBuffer.allocateDirect(getFrameBytes(width, height));
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).flip();
+		write(header);
+	}
+
+	/**
+	 * @param width
+	 * @param height
+	 * @return Size of one frame in a recording of the given dimensions, in bytes
+	 */
+	static int getFrameBytes(int width, int height) {
+		return 8 + width * height * 4;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @param pixels ARGB pixels of the frame, at least width x height of them
+	 * @param capturedNanos System.nanoTime() when the frame was captured
+	 * @throws IOException
+	 */
+	public void write(int[] pixels, long capturedNanos) throws IOException {
+		if (frameCount == 0) firstNanos = capturedNanos;
+
+		frameBuffer.clear();
+		frameBuffer.putLong(capturedNanos - firstNanos);
+		frameBuffer.asIntBuffer().put(pixels, 0, width * height);
+		frameBuffer.position(frameBuffer.capacity());
+		frameBuffer.flip();
+		write(frameBuffer);
+		++frameCount;
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -21,7 +21,7 @@ public class GeoPlayground extends PApplet {
 	Class BASE_GEOM_TYPE = RShape.class;
 	
 	public void setup() {
-		size(400, 400, OPENGL);
+		size(SketchSettings.getWidth(400), SketchSettings.getHeight(400), SketchSettings.getRenderer(OPENGL));
 		smooth();
 		background(255);
 		strokeWeight(2); 
@@ -0,0 +1,208 @@
+package sketches;
+
+import geomerative.RCommand;
+import geomerative.RContour;
+import geomerative.RFont;
+import geomerative.RGeomElem;
+import geomerative.RGroup;
+import geomerative.RMatrix;
+import geomerative.RPolygon;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import processing.core.PApplet;
+
+/**
+ * Process-wide cache of segmented glyph outlines.
+ *
+ * Parsing a TTF into an RFont and segmenting a glyph's curves into a polygon
+ * are both expensive, and the word sketches ask for the same few dozen letters
+ * over and over. Glyphs are keyed by font file, size, alignment, character and
+ * the RCommand segmentator/step that was used to flatten them, and callers
+ * always get their own copy of the cached polygon back so they're free to
+ * transform or clip it.
+ */
+public final class GlyphPolygonCache {
+	private static final ConcurrentHashMap<FontKey, RFont> FONTS = new ConcurrentHashMap<FontKey, RFont>();
+	private static final ConcurrentHashMap<GlyphKey, Glyph> GLYPHS = new ConcurrentHashMap<GlyphKey, Glyph>();
+
+	/**
+	 * RCommand's segmentation settings are global, so all segmentation done
+	 * through the cache is serialized on this lock.
+	 */
+	private static final Object SEGMENTATION_LOCK = new Object();
+
+	private GlyphPolygonCache() {}
+
+	/**
+	 * @param app
+	 * @param fontFile
+	 * @param fontSize
+	 * @param align
+	 * @param character
+	 * @param segmentator
+	 * @param segmentStep
+	 * @return Fresh copy of 'character's outline polygon, positioned where RFont.toPolygon(char) would put it
+	 */
+	public static RPolygon getCharPolygon(PApplet app, String fontFile, int fontSize, int align, char character, int segmentator, float segmentStep) {
+		return new RPolygon(getGlyph(app, fontFile, fontSize, align, character, segmentator, segmentStep).outline);
+	}
+
+	/**
+	 * Lays out 'text' from cached glyphs, the same way RFont.toGroup(String)
+	 * lays out a line of text (up to an overall translation, since the cached
+	 * advances don't know about the line's alignment).
+	 *
+	 * @param app
+	 * @param fontFile
+	 * @param fontSize
+	 * @param align
+	 * @param text
+	 * @param segmentator
+	 * @param segmentStep
+	 * @return Group with one freshly-copied polygon per character of 'text'
+	 */
+	public static RGroup getTextGroup(PApplet app, String fontFile, int fontSize, int align, String text, int segmentator, float segmentStep) {
+		RGroup group = new RGroup();
+		RPolygon charPoly;
+		RMatrix advanceMtx;
+		float advance = 0;
+
+		Glyph glyph;
+		for (int i = 0; i < text.length(); ++i) {
+			glyph = getGlyph(app, fontFile, fontSize, align, text.charAt(i), segmentator, segmentStep);
+			charPoly = new RPolygon(glyph.outline);
+			if (advance != 0) {
+				advanceMtx = new RMatrix();
+				advanceMtx.translate(advance, 0);
+				charPoly.transform(advanceMtx);
+			}
+			group.addElement(charPoly);
+			advance += glyph.advance;
+		}
+
+		return group;
+	}
+
+	/**
+	 * @param app
+	 * @param fontFile
+	 * @param fontSize
+	 * @param align
+	 * @return Shared RFont for the given file, size and alignment; callers must synchronize on it before use
+	 */
+	public static RFont getFont(PApplet app, String fontFile, int fontSize, int align) {
+		FontKey key = new FontKey(fontFile, fontSize, align);
+		RFont font = FONTS.get(key);
+		if (font == null) {
+			RFont newFont = new RFont(app, fontFile, fontSize, align);
+			font = FONTS.putIfAbsent(key, newFont);
+			if (font == null) font = newFont;
+		}
+		return font;
+	}
+
+	/**
+	 * Drop every cached font and glyph.
+	 */
+	public static void clear() {
+		GLYPHS.clear();
+		FONTS.clear();
+	}
+
+	private static Glyph getGlyph(PApplet app, String fontFile, int fontSize, int align, char character, int segmentator, float segmentStep) {
+		GlyphKey key = new GlyphKey(new FontKey(fontFile, fontSize, align), character, segmentator, segmentStep);
+		Glyph glyph = GLYPHS.get(key);
+		if (glyph == null) {
+			Glyph newGlyph = buildGlyph(getFont(app, fontFile, fontSize, align), character, segmentator, segmentStep);
+			glyph = GLYPHS.putIfAbsent(key, newGlyph);
+			if (glyph == null) glyph = newGlyph;
+		}
+		return glyph;
+	}
+
+	private static Glyph buildGlyph(RFont font, char character, int segmentator, float segmentStep) {
+		Glyph glyph = new Glyph();
+		RGroup pair;
+		synchronized (SEGMENTATION_LOCK) {
+			synchronized (font) {
+				RCommand.setSegmentator(segmentator);
+				RCommand.setSegmentStep(segmentStep);
+
+				glyph.outline = font.toPolygon(character);
+
+				// Lay out the character twice to find out how far the pen moves for it
+				pair = font.toGroup(new String(new char[] { character, character }));
+			}
+		}
+		glyph.advance = getMinX(pair.elements[1]) - getMinX(pair.elements[0]);
+		return glyph;
+	}
+
+	private static float getMinX(RGeomElem elem) {
+		RContour bounds = elem.getBounds();
+		float minX = Float.MAX_VALUE;
+		for (int i = 0; i < bounds.points.length; ++i) {
+			minX = (bounds.points[i].x < minX) ? bounds.points[i].x : minX;
+		}
+		return minX;
+	}
+
+	private static final class Glyph {
+		RPolygon outline;
+		float advance;
+	}
+
+	private static final class FontKey {
+		final String fontFile;
+		final int fontSize;
+		final int align;
+
+		FontKey(String fontFile, int fontSize, int align) {
+			this.fontFile = fontFile;
+			this.fontSize = fontSize;
+			this.align = align;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof FontKey)) return false;
+			FontKey other = (FontKey) o;
+			return fontSize == other.fontSize && align == other.align && fontFile.equals(other.fontFile);
+		}
+
+		@Override
+		public int hashCode() {
+			return (fontFile.hashCode() * 31 + fontSize) * 31 + align;
+		}
+	}
+
+	private static final class GlyphKey {
+		final FontKey font;
+		final char character;
+		final int segmentator;
+		final float segmentStep;
+
+		GlyphKey(FontKey font, char character, int segmentator, float segmentStep) {
+			this.font = font;
+			this.character = character;
+			this.segmentator = segmentator;
+			this.segmentStep = segmentStep;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof GlyphKey)) return false;
+			GlyphKey other = (GlyphKey) o;
+			return character == other.character
+				&& segmentator == other.segmentator
+				&& Float.floatToIntBits(segmentStep) == Float.floatToIntBits(other.segmentStep)
+				&& font.equals(other.font);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((font.hashCode() * 31 + character) * 31 + segmentator) * 31 + Float.floatToIntBits(segmentStep);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package sketches;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.core.PImage;
+
+/**
+ * Size-bounded cache of pre-rendered character tiles.
+ *
+ * A tile is whatever image a TileRenderer draws for a (major character, minor
+ * character, font size) combination; for the banner fonts, that's the major
+ * character's mask spelled out in minor characters. Tiles are kept until the
+ * total number of pixels in the atlas would go over its budget, at which
+ * point the least recently drawn tiles are evicted.
+ *
+ * Only meant to be used from the animation thread.
+ */
+public class GlyphTileAtlas {
+	public interface TileRenderer {
+		/**
+		 * @param major
+		 * @param minor
+		 * @param fontSize
+		 * @return Freshly-rendered tile for the given combination
+		 */
+		public PImage renderTile(char major, char minor, int fontSize);
+	}
+
+	private final TileRenderer renderer;
+	private final long maxPixels;
+	private long pixels = 0;
+
+	// Access-ordered, so iteration starts at the least recently used tile
+	private final LinkedHashMap<Long, PImage> tiles = new LinkedHashMap<Long, PImage>(64, 0.75f, true);
+
+	private final Metrics.Counter hits;
+	private final Metrics.Counter misses;
+	private final Metrics.Counter evictions;
+	private final Metrics.Gauge size;
+
+	/**
+	 * @param name Prefix of the metrics the atlas reports
+	 * @param maxPixels Most pixels, summed over all tiles, to keep at once
+	 * @param renderer
+	 */
+	public GlyphTileAtlas(String name, long maxPixels, TileRenderer renderer) {
+		this.renderer = renderer;
+		this.maxPixels = maxPixels;
+
+		hits = Metrics.counter(name + ".hits");
+		misses = Metrics.counter(name + ".misses");
+		evictions = Metrics.counter(name + ".evictions");
+		size = Metrics.gauge(name + ".pixels");
+	}
+
+	/**
+	 * @param major
+	 * @param minor
+	 * @param fontSize
+	 * @return Tile for the given combination, rendering it first if it isn't in the atlas
+	 */
+	public PImage getTile(char major, char minor, int fontSize) {
+		Long key = getKey(major, minor, fontSize);
+		PImage tile = tiles.get(key);
+		if (tile != null) {
+			hits.increment();
+			return tile;
+		}
+
+		misses.increment();
+		tile = renderer.renderTile(major, minor, fontSize);
+		tiles.put(key, tile);
+		pixels += getPixels(tile);
+		evict();
+		return tile;
+	}
+
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	public long getPixelCount() {
+		return pixels;
+	}
+
+	public void clear() {
+		tiles.clear();
+		pixels = 0;
+		size.set(0);
+	}
+
+	/**
+	 * Drop least recently used tiles until the atlas fits its budget again,
+	 * always keeping the most recent one.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Long, PImage>> eldest = tiles.entrySet().iterator();
+		while (pixels > maxPixels && tiles.size() > 1) {
+			pixels -= getPixels(eldest.next().getValue());
+			eldest.remove();
+			evictions.increment();
+		}
+		size.set(pixels);
+	}
+
+	private static long getPixels(PImage tile) {
+		return (long)tile.width * tile.height;
+	}
+
+	private static Long getKey(char major, char minor, int fontSize) {
+		return Long.valueOf(((long)major << 48) | ((long)minor << 32) | (fontSize & 0xffffffffL));
+	}
+}
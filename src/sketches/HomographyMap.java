@@ -0,0 +1,192 @@
+package sketches;
+
+import Jama.Matrix;
+
+/**
+ * Maps capture coordinates to screen coordinates through a homography, fit
+ * by least squares to any number (at least four) of calibration points.
+ *
+ * The fit uses Hartley's normalization: both sets of points are moved to
+ * their centroid and scaled to an average distance of sqrt(2) from it
+ * before solving, which keeps the least-squares problem well conditioned
+ * whatever units the points are in.
+ *
+ * Once fit, the mapping is baked into a table of the screen position of
+ * every capture pixel corner, so mapping a point costs four table reads and
+ * a bilinear blend, with no divisions.
+ */
+public class HomographyMap {
+	private final int width;
+	private final int height;
+	private final float[] screenXs;
+	private final float[] screenYs;
+	private final double[] homography = new double[9];
+
+	/**
+	 * @param width Width of the capture, in pixels
+	 * @param height Height of the capture, in pixels
+	 */
+	public HomographyMap(int width, int height) {
+		this.width = width;
+		this.height = height;
+		screenXs = new float[(width + 1) * (height + 1)];
+		screenYs = new float[(width + 1) * (height + 1)];
+	}
+
+	/**
+	 * @return Row-major 3x3 homography from capture to screen coordinates, as last fit
+	 */
+	public double[] getHomography() {
+		return homography;
+	}
+
+	/**
+	 * Fit the homography from capture to screen coordinates, and rebuild the table.
+	 *
+	 * @param capturePoints Capture x and y of each calibration point
+	 * @param screenPoints Screen x and y of each calibration point
+	 * @param count Number of calibration points to use, at least four
+	 * @return Whether the points pinned down a homography; if not, the table is left as it was
+	 */
+	public boolean fit(double[][] capturePoints, double[][] screenPoints, int count) {
+		if (count < 4) return false;
+
+		Matrix fromNormal = normalize(capturePoints, count);
+		Matrix toNormal = normalize(screenPoints, count);
+
+		// Two equations per point in the first eight entries, with the last fixed at 1
+		Matrix a = new Matrix(count * 2, 8);
+		Matrix b = new Matrix(count * 2, 1);
+		double x, y, u, v;
+		for (int i = 0; i < count; ++i) {
+			x = apply(fromNormal, 0, capturePoints[i]);
+			y = apply(fromNormal, 1, capturePoints[i]);
+			u = apply(toNormal, 0, screenPoints[i]);
+			v = apply(toNormal, 1, screenPoints[i]);
+
+			a.set(i * 2, 0, x);
+			a.set(i * 2, 1, y);
+			a.set(i * 2, 2, 1);
+			a.set(i * 2, 6, -u * x);
+			a.set(i * 2, 7, -u * y);
+			b.set(i * 2, 0, u);
+
+			a.set(i * 2 + 1, 3, x);
+			a.set(i * 2 + 1, 4, y);
+			a.set(i * 2 + 1, 5, 1);
+			a.set(i * 2 + 1, 6, -v * x);
+			a.set(i * 2 + 1, 7, -v * y);
+			b.set(i * 2 + 1, 0, v);
+		}
+
+		Matrix solution;
+		try {
+			// Least squares, by QR decomposition, when there are more than four points
+			solution = a.solve(b);
+		} catch (RuntimeException e) {
+			// Rank deficient: three or more of the points were in a line
+			return false;
+		}
+
+		Matrix normalHomography = new Matrix(3, 3);
+		for (int i = 0; i < 8; ++i) {
+			normalHomography.set(i / 3, i % 3, solution.get(i, 0));
+		}
+		normalHomography.set(2, 2, 1);
+
+		Matrix h = toNormal.inverse().times(normalHomography).times(fromNormal);
+		double scale = h.get(2, 2);
+		if (scale == 0) return false;
+		for (int i = 0; i < 9; ++i) {
+			homography[i] = h.get(i / 3, i % 3) / scale;
+		}
+
+		buildTable();
+		return true;
+	}
+
+	/**
+	 * Map a batch of capture coordinates to screen coordinates.
+	 *
+	 * @param xs Capture x of each point
+	 * @param ys Capture y of each point
+	 * @param count Number of points
+	 * @param screenXs Where to write the screen x of each point; may be 'xs'
+	 * @param screenYs Where to write the screen y of each point; may be 'ys'
+	 */
+	public void map(float[] xs, float[] ys, int count, float[] screenXs, float[] screenYs) {
+		float[] tableXs = this.screenXs, tableYs = this.screenYs;
+		int stride = width + 1;
+
+		float x, y, fx, fy, top, bottom;
+		int ix, iy, i;
+		for (int p = 0; p < count; ++p) {
+			x = Math.max(0, Math.min(xs[p], width));
+			y = Math.max(0, Math.min(ys[p], height));
+			ix = Math.min((int)x, width - 1);
+			iy = Math.min((int)y, height - 1);
+			fx = x - ix;
+			fy = y - iy;
+			i = iy * stride + ix;
+
+			top = tableXs[i] + (tableXs[i + 1] - tableXs[i]) * fx;
+			bottom = tableXs[i + stride] + (tableXs[i + stride + 1] - tableXs[i + stride]) * fx;
+			screenXs[p] = top + (bottom - top) * fy;
+
+			top = tableYs[i] + (tableYs[i + 1] - tableYs[i]) * fx;
+			bottom = tableYs[i + stride] + (tableYs[i + stride + 1] - tableYs[i + stride]) * fx;
+			screenYs[p] = top + (bottom - top) * fy;
+		}
+	}
+
+	private void buildTable() {
+		double[] h = homography;
+		double w;
+		int i = 0;
+		for (int y = 0; y <= height; ++y) {
+			for (int x = 0; x <= width; ++x, ++i) {
+				w = h[6] * x + h[7] * y + h[8];
+				screenXs[i] = (float)((h[0] * x + h[1] * y + h[2]) / w);
+				screenYs[i] = (float)((h[3] * x + h[4] * y + h[5]) / w);
+			}
+		}
+	}
+
+	/**
+	 * @param points
+	 * @param count
+	 * @return Similarity transform taking the first 'count' points to their centroid, at an average distance of sqrt(2) from it
+	 */
+	private static Matrix normalize(double[][] points, int count) {
+		double centerX = 0, centerY = 0;
+		for (int i = 0; i < count; ++i) {
+			centerX += points[i][0];
+			centerY += points[i][1];
+		}
+		centerX /= count;
+		centerY /= count;
+
+		double distance = 0;
+		for (int i = 0; i < count; ++i) {
+			distance += Math.sqrt((points[i][0] - centerX) * (points[i][0] - centerX) + (points[i][1] - centerY) * (points[i][1] - centerY));
+		}
+		distance /= count;
+		double scale = (distance > 0) ? Math.sqrt(2) / distance : 1;
+
+		return new Matrix(new double[][] {
+			{ scale, 0, -scale * centerX },
+			{ 0, scale, -scale * centerY },
+			{ 0, 0, 1 }
+		});
+	}
+
+	/**
+	 * @param similarity Transform from normalize()
+	 * @param row 0 for x, 1 for y
+	 * @param point
+	 * @return Coordinate 'row' of 'point' transformed
+	 */
+	private static double apply(Matrix similarity, int row, double[] point) {
+		return similarity.get(row, 0) * point[0] + similarity.get(row, 1) * point[1] + similarity.get(row, 2);
+	}
+}
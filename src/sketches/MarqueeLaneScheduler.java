@@ -0,0 +1,222 @@
+package sketches;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Places marquee words in horizontal lanes so they never overlap.
+ *
+ * The area is split into lanes of equal height, and a word takes up as many
+ * adjacent lanes as it's tall. Words enter a lane just off one edge and move
+ * across it at a constant speed, so where each one is on any later frame
+ * follows from where and when it was placed. A word can only be placed in
+ * lanes where every word already there is moving the same way, has moved far
+ * enough in to leave a gap behind it, and won't be caught up with before it
+ * leaves the lane.
+ *
+ * Only meant to be used from the animation thread.
+ *
+ * @param <T> Type of the words being placed
+ */
+public class MarqueeLaneScheduler<T> {
+	private final int capacity;
+	private final int laneCount;
+	private final float laneHeight;
+	private final float laneWidth;
+	private final float minGap;
+
+	// Placed words, struct-of-arrays
+	private final Object[] words;
+	private final int[] lanes;
+	private final int[] spans;
+	private final float[] widths;
+	private final float[] speeds;
+	private final int[] directions;
+	private final long[] placedFrames;
+	private int size = 0;
+
+	// Scratch space for findLanes()
+	private final boolean[] blocked;
+	private final int[] candidates;
+
+	/**
+	 * @param capacity Most words placed at once
+	 * @param laneCount
+	 * @param laneHeight
+	 * @param laneWidth Width of the area the words move across
+	 * @param minGap Smallest horizontal space to leave between words in the same lane
+	 */
+	public MarqueeLaneScheduler(int capacity, int laneCount, float laneHeight, float laneWidth, float minGap) {
+		assert laneCount > 0 : "There must be at least one lane";
+		this.capacity = capacity;
+		this.laneCount = laneCount;
+		this.laneHeight = laneHeight;
+		this.laneWidth = laneWidth;
+		this.minGap = minGap;
+
+		words = new Object[capacity];
+		lanes = new int[capacity];
+		spans = new int[capacity];
+		widths = new float[capacity];
+		speeds = new float[capacity];
+		directions = new int[capacity];
+		placedFrames = new long[capacity];
+
+		blocked = new boolean[laneCount];
+		candidates = new int[laneCount];
+	}
+
+	public int size() { return size; }
+
+	public int getCapacity() { return capacity; }
+
+	public boolean hasFreeSlot() { return size < capacity; }
+
+	public int getLaneCount() { return laneCount; }
+
+	public float getLaneHeight() { return laneHeight; }
+
+	/**
+	 * @param height
+	 * @return Number of lanes a word 'height' tall takes up
+	 */
+	public int getSpan(float height) {
+		return Math.max(1, (int)Math.ceil(height / laneHeight));
+	}
+
+	/**
+	 * @param lane
+	 * @return Top of 'lane'
+	 */
+	public float getLaneY(int lane) {
+		return lane * laneHeight;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		return (T)words[i];
+	}
+
+	public int getLane(int i) {
+		return lanes[i];
+	}
+
+	/**
+	 * @param span Number of adjacent lanes the word takes up
+	 * @param width
+	 * @param speed Distance the word moves each frame
+	 * @param direction Negative to move right to left, positive to move left to right
+	 * @param frame Current frame
+	 * @param random Picks between the lanes that are free
+	 * @return First of 'span' adjacent lanes a word entering now would never overlap anything in, or -1 if there aren't any
+	 */
+	public int findLanes(int span, float width, float speed, int direction, long frame, Random random) {
+		if (span > laneCount || size == capacity) return -1;
+
+		Arrays.fill(blocked, false);
+		for (int i = 0; i < size; ++i) {
+			if (!isClear(i, speed, direction, frame)) {
+				for (int lane = lanes[i]; lane < lanes[i] + spans[i]; ++lane) {
+					blocked[lane] = true;
+				}
+			}
+		}
+
+		// Every run of 'span' unblocked lanes is a candidate
+		int candidateCount = 0, run = 0;
+		for (int lane = 0; lane < laneCount; ++lane) {
+			run = blocked[lane] ? 0 : run + 1;
+			if (run >= span) candidates[candidateCount++] = lane - span + 1;
+		}
+		if (candidateCount == 0) return -1;
+		return candidates[random.nextInt(candidateCount)];
+	}
+
+	/**
+	 * Place a word that has just been positioned at the entry edge of its lanes.
+	 *
+	 * @param word
+	 * @param lane First lane, as returned by findLanes()
+	 * @param span
+	 * @param width
+	 * @param speed
+	 * @param direction
+	 * @param frame Current frame
+	 */
+	public void add(T word, int lane, int span, float width, float speed, int direction, long frame) {
+		assert size < capacity : "No free slots";
+		assert lane >= 0 && lane + span <= laneCount : "Lanes out of range";
+		words[size] = word;
+		lanes[size] = lane;
+		spans[size] = span;
+		widths[size] = width;
+		speeds[size] = speed;
+		directions[size] = direction;
+		placedFrames[size] = frame;
+		++size;
+	}
+
+	/**
+	 * @param word
+	 * @return Whether 'word' was placed (and so has now been removed)
+	 */
+	public boolean remove(T word) {
+		for (int i = 0; i < size; ++i) {
+			if (words[i] == word) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void clear() {
+		Arrays.fill(words, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * @param i
+	 * @param frame
+	 * @return How far word 'i's trailing edge has moved in from the edge it entered at
+	 */
+	private float getProgress(int i, long frame) {
+		return speeds[i] * (frame - placedFrames[i]) - widths[i];
+	}
+
+	/**
+	 * @return Whether a word entering now, moving at 'speed' in 'direction', will stay clear of word 'i'
+	 */
+	private boolean isClear(int i, float speed, int direction, long frame) {
+		float progress = getProgress(i, frame);
+
+		// Gone already, and just waiting to be removed
+		if (progress >= laneWidth) return true;
+
+		// Words moving towards each other always meet
+		if ((directions[i] < 0) != (direction < 0)) return false;
+
+		// Not far enough in yet to leave a gap behind it
+		if (progress < minGap) return false;
+
+		// Faster words must not catch up before the slower one has left
+		if (speed > speeds[i]) {
+			float framesToCatchUp = (progress - minGap) / (speed - speeds[i]);
+			float framesToLeave = (laneWidth - progress) / speeds[i];
+			if (framesToCatchUp < framesToLeave) return false;
+		}
+		return true;
+	}
+
+	private void removeAt(int i) {
+		int last = --size;
+		words[i] = words[last];
+		lanes[i] = lanes[last];
+		spans[i] = spans[last];
+		widths[i] = widths[last];
+		speeds[i] = speeds[last];
+		directions[i] = directions[last];
+		placedFrames[i] = placedFrames[last];
+		words[last] = null;
+	}
+}
@@ -0,0 +1,141 @@
+package sketches;
+
+import geomerative.RContour;
+import geomerative.RPoint;
+import geomerative.RPolygon;
+
+/**
+ * Sorts filler tiles into those entirely outside a mask polygon, those
+ * entirely inside it, and those that straddle its boundary.
+ *
+ * A tile's bounding box is compared against every edge of the mask; if no edge
+ * passes through the box, the whole box (and so the whole tile) is on one side
+ * of the boundary, and a single even-odd point-in-polygon test tells which.
+ * Only boundary tiles need to be clipped with a boolean polygon operation.
+ */
+public class MaskTileClassifier {
+	public static final int OUTSIDE = 0;
+	public static final int INSIDE = 1;
+	public static final int BOUNDARY = 2;
+
+	// Edges as consecutive (x0, y0, x1, y1) quadruples
+	private final float[] edges;
+	private final int numEdges;
+
+	private float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+	private float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+	/**
+	 * @param mask
+	 */
+	public MaskTileClassifier(RPolygon mask) {
+		int count = 0;
+		if (mask.contours != null) {
+			for (RContour contour : mask.contours) {
+				if (contour.points != null && contour.points.length > 1) count += contour.points.length;
+			}
+		}
+		edges = new float[count * 4];
+
+		int edge = 0;
+		RPoint from, to;
+		if (mask.contours != null) {
+			for (RContour contour : mask.contours) {
+				if (contour.points == null || contour.points.length < 2) continue;
+				for (int i = 0; i < contour.points.length; ++i) {
+					from = contour.points[i];
+					to = contour.points[(i + 1) % contour.points.length];
+					edges[edge * 4] = from.x;
+					edges[edge * 4 + 1] = from.y;
+					edges[edge * 4 + 2] = to.x;
+					edges[edge * 4 + 3] = to.y;
+					++edge;
+
+					minX = (from.x < minX) ? from.x : minX;
+					maxX = (from.x > maxX) ? from.x : maxX;
+					minY = (from.y < minY) ? from.y : minY;
+					maxY = (from.y > maxY) ? from.y : maxY;
+				}
+			}
+		}
+		numEdges = edge;
+	}
+
+	/**
+	 * @param tile
+	 * @return OUTSIDE, INSIDE or BOUNDARY, depending on where 'tile' lies relative to the mask
+	 */
+	public int classify(RPolygon tile) {
+		if (tile.contours == null) return OUTSIDE;
+
+		float tileMinX = Float.MAX_VALUE, tileMinY = Float.MAX_VALUE;
+		float tileMaxX = -Float.MAX_VALUE, tileMaxY = -Float.MAX_VALUE;
+		for (RContour contour : tile.contours) {
+			if (contour.points == null) continue;
+			for (RPoint point : contour.points) {
+				tileMinX = (point.x < tileMinX) ? point.x : tileMinX;
+				tileMaxX = (point.x > tileMaxX) ? point.x : tileMaxX;
+				tileMinY = (point.y < tileMinY) ? point.y : tileMinY;
+				tileMaxY = (point.y > tileMaxY) ? point.y : tileMaxY;
+			}
+		}
+		if (tileMinX > tileMaxX) return OUTSIDE;
+
+		return classify(tileMinX, tileMinY, tileMaxX, tileMaxY);
+	}
+
+	/**
+	 * @param rectMinX
+	 * @param rectMinY
+	 * @param rectMaxX
+	 * @param rectMaxY
+	 * @return OUTSIDE, INSIDE or BOUNDARY, depending on where the given rectangle lies relative to the mask
+	 */
+	public int classify(float rectMinX, float rectMinY, float rectMaxX, float rectMaxY) {
+		if (rectMaxX < minX || rectMinX > maxX || rectMaxY < minY || rectMinY > maxY) return OUTSIDE;
+
+		for (int i = 0; i < numEdges; ++i) {
+			if (segmentHitsRect(edges[i * 4], edges[i * 4 + 1], edges[i * 4 + 2], edges[i * 4 + 3], rectMinX, rectMinY, rectMaxX, rectMaxY)) {
+				return BOUNDARY;
+			}
+		}
+
+		return contains((rectMinX + rectMaxX) / 2, (rectMinY + rectMaxY) / 2) ? INSIDE : OUTSIDE;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return Whether (x, y) is inside the mask, by the even-odd rule
+	 */
+	public boolean contains(float x, float y) {
+		boolean inside = false;
+		float x0, y0, x1, y1;
+		for (int i = 0; i < numEdges; ++i) {
+			x0 = edges[i * 4];
+			y0 = edges[i * 4 + 1];
+			x1 = edges[i * 4 + 2];
+			y1 = edges[i * 4 + 3];
+			if ((y0 > y) != (y1 > y) && x < x0 + (y - y0) * (x1 - x0) / (y1 - y0)) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	private static boolean segmentHitsRect(float x0, float y0, float x1, float y1, float minX, float minY, float maxX, float maxY) {
+		// Segment's bounding box must overlap the rectangle...
+		if ((x0 < minX && x1 < minX) || (x0 > maxX && x1 > maxX)) return false;
+		if ((y0 < minY && y1 < minY) || (y0 > maxY && y1 > maxY)) return false;
+
+		// ...and the segment's line must have rectangle corners on both sides (or touch one)
+		float dx = x1 - x0, dy = y1 - y0;
+		float c0 = dx * (minY - y0) - dy * (minX - x0);
+		float c1 = dx * (minY - y0) - dy * (maxX - x0);
+		float c2 = dx * (maxY - y0) - dy * (minX - x0);
+		float c3 = dx * (maxY - y0) - dy * (maxX - x0);
+		if (c0 > 0 && c1 > 0 && c2 > 0 && c3 > 0) return false;
+		if (c0 < 0 && c1 < 0 && c2 < 0 && c3 < 0) return false;
+		return true;
+	}
+}
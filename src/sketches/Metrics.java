@@ -0,0 +1,270 @@
+package sketches;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms.
+ *
+ * Metrics are created on first use and live for the rest of the process; all
+ * of them are safe to update from any thread. The whole registry is exposed
+ * over JMX as a single "sketches:type=Metrics" bean, and MetricsHud can draw
+ * it on top of a sketch.
+ */
+public final class Metrics {
+	private static final ConcurrentHashMap<String, Counter> COUNTERS = new ConcurrentHashMap<String, Counter>();
+	private static final ConcurrentHashMap<String, Gauge> GAUGES = new ConcurrentHashMap<String, Gauge>();
+	private static final ConcurrentHashMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<String, Histogram>();
+
+	private static final String[] HISTOGRAM_STATS = new String[] { "count", "mean", "p50", "p90", "p99", "max" };
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), new ObjectName("sketches:type=Metrics"));
+		} catch (Exception e) {
+			System.err.println("Can't expose metrics over JMX: " + e);
+		}
+	}
+
+	private Metrics() {}
+
+	public static Counter counter(String name) {
+		Counter counter = COUNTERS.get(name);
+		if (counter == null) {
+			Counter newCounter = new Counter();
+			counter = COUNTERS.putIfAbsent(name, newCounter);
+			if (counter == null) counter = newCounter;
+		}
+		return counter;
+	}
+
+	public static Gauge gauge(String name) {
+		Gauge gauge = GAUGES.get(name);
+		if (gauge == null) {
+			Gauge newGauge = new Gauge();
+			gauge = GAUGES.putIfAbsent(name, newGauge);
+			if (gauge == null) gauge = newGauge;
+		}
+		return gauge;
+	}
+
+	public static Histogram histogram(String name) {
+		Histogram histogram = HISTOGRAMS.get(name);
+		if (histogram == null) {
+			Histogram newHistogram = new Histogram();
+			histogram = HISTOGRAMS.putIfAbsent(name, newHistogram);
+			if (histogram == null) histogram = newHistogram;
+		}
+		return histogram;
+	}
+
+	public static List<String> getCounterNames() { return sortedKeys(COUNTERS); }
+
+	public static List<String> getGaugeNames() { return sortedKeys(GAUGES); }
+
+	public static List<String> getHistogramNames() { return sortedKeys(HISTOGRAMS); }
+
+	/**
+	 * Zero every counter and histogram (gauges keep their last value).
+	 */
+	public static void reset() {
+		for (Counter counter : COUNTERS.values()) counter.reset();
+		for (Histogram histogram : HISTOGRAMS.values()) histogram.reset();
+	}
+
+	private static List<String> sortedKeys(ConcurrentHashMap<String, ?> map) {
+		List<String> names = new ArrayList<String>(map.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	public static class Counter {
+		private final AtomicLong value = new AtomicLong();
+
+		public void increment() { value.incrementAndGet(); }
+
+		public void add(long delta) { value.addAndGet(delta); }
+
+		public long get() { return value.get(); }
+
+		void reset() { value.set(0); }
+	}
+
+	public static class Gauge {
+		private volatile double value;
+
+		public void set(double value) { this.value = value; }
+
+		public double get() { return value; }
+	}
+
+	/**
+	 * Histogram of non-negative values (usually nanoseconds), with buckets
+	 * that are 1/8th of a power of two wide, so percentiles are accurate to
+	 * within about 6%.
+	 */
+	public static class Histogram {
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(long value) {
+			if (value < 0) value = 0;
+			buckets.incrementAndGet(getBucket(value));
+			count.incrementAndGet();
+			sum.addAndGet(value);
+
+			long currentMax;
+			while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value));
+		}
+
+		/**
+		 * @param startNanos Value of System.nanoTime() when the measured work started
+		 */
+		public void recordSince(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public long getCount() { return count.get(); }
+
+		public long getMax() { return max.get(); }
+
+		public double getMean() {
+			long n = count.get();
+			return (n == 0) ? 0 : (double)sum.get() / n;
+		}
+
+		/**
+		 * @param percentile Between 0 and 100
+		 * @return Approximate value below which 'percentile' percent of the recorded values fall
+		 */
+		public long getPercentile(double percentile) {
+			long n = count.get();
+			if (n == 0) return 0;
+			long rank = (long)Math.ceil(n * percentile / 100d);
+			if (rank < 1) rank = 1;
+
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; ++i) {
+				seen += buckets.get(i);
+				if (seen >= rank) return Math.min(getBucketMiddle(i), max.get());
+			}
+			return max.get();
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; ++i) buckets.set(i, 0);
+			count.set(0);
+			sum.set(0);
+			max.set(0);
+		}
+
+		private static int getBucket(long value) {
+			if (value < SUB_BUCKETS) return (int)value;
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		private static long getBucketMiddle(int bucket) {
+			if (bucket < SUB_BUCKETS) return bucket;
+			int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			long width = 1L << (exponent - SUB_BUCKET_BITS);
+			long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+			return lower + width / 2;
+		}
+	}
+
+	/**
+	 * Every metric as a read-only JMX attribute: counters and gauges by name,
+	 * histograms as "name.count", "name.p99" and so on.
+	 */
+	private static class MetricsBean implements DynamicMBean {
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Counter counter = COUNTERS.get(attribute);
+			if (counter != null) return counter.get();
+
+			Gauge gauge = GAUGES.get(attribute);
+			if (gauge != null) return gauge.get();
+
+			int dot = attribute.lastIndexOf('.');
+			Histogram histogram = (dot > 0) ? HISTOGRAMS.get(attribute.substring(0, dot)) : null;
+			if (histogram != null) {
+				String stat = attribute.substring(dot + 1);
+				if (stat.equals("count")) return (double)histogram.getCount();
+				if (stat.equals("mean")) return histogram.getMean();
+				if (stat.equals("max")) return (double)histogram.getMax();
+				if (stat.startsWith("p")) {
+					try {
+						return (double)histogram.getPercentile(Double.parseDouble(stat.substring(1)));
+					} catch (NumberFormatException e) {}
+				}
+			}
+			throw new AttributeNotFoundException(attribute);
+		}
+
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException e) {}
+			}
+			return list;
+		}
+
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+			for (String name : getCounterNames()) {
+				attributes.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+			}
+			for (String name : getGaugeNames()) {
+				attributes.add(new MBeanAttributeInfo(name, "double", "Gauge", true, false, false));
+			}
+			for (String name : getHistogramNames()) {
+				for (String stat : HISTOGRAM_STATS) {
+					attributes.add(new MBeanAttributeInfo(name + "." + stat, "double", "Histogram " + stat, true, false, false));
+				}
+			}
+			return new MBeanInfo(Metrics.class.getName(), "Sketch metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+				new MBeanOperationInfo[] {
+					new MBeanOperationInfo("reset", "Zero every counter and histogram", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION)
+				}, null);
+		}
+
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			if (actionName.equals("reset")) reset();
+			return null;
+		}
+
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read-only");
+		}
+
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package sketches;
+
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+/**
+ * On-screen overlay listing every metric in the Metrics registry.
+ *
+ * Off until toggle()d; sketches call draw() last thing in their own draw().
+ */
+public class MetricsHud {
+	private static final int FONT_SIZE = 12;
+	private static final float NANOS_PER_MILLI = 1000000f;
+
+	private final PApplet app;
+	private PFont font;
+	private boolean enabled = false;
+
+	public MetricsHud(PApplet app) {
+		this.app = app;
+	}
+
+	public void toggle() {
+		enabled = !enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void draw() {
+		if (!enabled) return;
+		if (font == null) font = app.createFont("Monospaced", FONT_SIZE);
+
+		float y = FONT_SIZE;
+		int lines = Metrics.getCounterNames().size() + Metrics.getGaugeNames().size() + Metrics.getHistogramNames().size();
+
+		// This version of Processing has no pushStyle(), so put the sketch's style back by hand
+		PGraphics g = app.g;
+		boolean fill = g.fill, stroke = g.stroke;
+		int fillColor = g.fillColor, strokeColor = g.strokeColor, rectMode = g.rectMode;
+		int textAlign = g.textAlign, textAlignY = g.textAlignY;
+		PFont textFont = g.textFont;
+		float textSize = g.textSize;
+
+		app.pushMatrix();
+		{
+			app.rectMode(PApplet.CORNER);
+			app.noStroke();
+			app.fill(0, 160);
+			app.rect(0, 0, 480, (lines + 1) * FONT_SIZE);
+
+			app.textFont(font, FONT_SIZE);
+			app.textAlign(PApplet.LEFT, PApplet.BASELINE);
+			app.fill(255);
+			for (String name : Metrics.getHistogramNames()) {
+				Metrics.Histogram histogram = Metrics.histogram(name);
+				app.text(name + "  n=" + histogram.getCount()
+					+ "  p50=" + PApplet.nf(histogram.getPercentile(50) / NANOS_PER_MILLI, 1, 2)
+					+ "  p99=" + PApplet.nf(histogram.getPercentile(99) / NANOS_PER_MILLI, 1, 2)
+					+ "  max=" + PApplet.nf(histogram.getMax() / NANOS_PER_MILLI, 1, 2) + " ms", 4, y);
+				y += FONT_SIZE;
+			}
+			for (String name : Metrics.getGaugeNames()) {
+				app.text(name + "  " + PApplet.nf((float)Metrics.gauge(name).get(), 1, 2), 4, y);
+				y += FONT_SIZE;
+			}
+			for (String name : Metrics.getCounterNames()) {
+				app.text(name + "  " + Metrics.counter(name).get(), 4, y);
+				y += FONT_SIZE;
+			}
+		}
+		app.popMatrix();
+
+		if (fill) app.fill(fillColor); else app.noFill();
+		if (stroke) app.stroke(strokeColor); else app.noStroke();
+		app.rectMode(rectMode);
+		app.textAlign(textAlign, textAlignY);
+		if (textFont != null) app.textFont(textFont, textSize);
+	}
+}
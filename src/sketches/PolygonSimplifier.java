@@ -0,0 +1,131 @@
+package sketches;
+
+import geomerative.RContour;
+import geomerative.RPoint;
+import geomerative.RPolygon;
+
+/**
+ * Douglas-Peucker simplification of closed polygon contours.
+ */
+public final class PolygonSimplifier {
+	private PolygonSimplifier() {}
+
+	/**
+	 * @param poly
+	 * @param tolerance Largest distance any dropped vertex may be from the simplified outline
+	 * @return Simplified copy of 'poly'; contours that collapse to fewer than three vertices are dropped
+	 */
+	public static RPolygon simplify(RPolygon poly, float tolerance) {
+		RPolygon simplified = new RPolygon();
+		if (poly.contours == null) return simplified;
+
+		for (RContour contour : poly.contours) {
+			if (contour.points == null || contour.points.length < 3) continue;
+
+			float[] xy = new float[contour.points.length * 2];
+			for (int i = 0; i < contour.points.length; ++i) {
+				xy[i * 2] = contour.points[i].x;
+				xy[i * 2 + 1] = contour.points[i].y;
+			}
+
+			boolean[] keep = simplifyClosed(xy, tolerance);
+			int kept = 0;
+			for (boolean k : keep) if (k) ++kept;
+			if (kept < 3) continue;
+
+			RPoint[] points = new RPoint[kept];
+			int out = 0;
+			for (int i = 0; i < keep.length; ++i) {
+				if (keep[i]) points[out++] = new RPoint(xy[i * 2], xy[i * 2 + 1]);
+			}
+			simplified.addContour(points);
+		}
+		return simplified;
+	}
+
+	/**
+	 * @param xy Packed (x, y) pairs of a closed contour
+	 * @param tolerance
+	 * @return Which vertices of the contour survive simplification
+	 */
+	public static boolean[] simplifyClosed(float[] xy, float tolerance) {
+		int n = xy.length / 2;
+		boolean[] keep = new boolean[n];
+		if (n <= 3 || tolerance <= 0) {
+			for (int i = 0; i < n; ++i) keep[i] = true;
+			return keep;
+		}
+
+		// Split the loop at vertex 0 and the vertex farthest from it, and simplify both halves
+		int far = 0;
+		float farDistance = -1, d;
+		for (int i = 1; i < n; ++i) {
+			d = square(xy[i * 2] - xy[0]) + square(xy[i * 2 + 1] - xy[1]);
+			if (d > farDistance) {
+				farDistance = d;
+				far = i;
+			}
+		}
+		keep[0] = true;
+		keep[far] = true;
+
+		int[] stack = new int[n * 2];
+		pushSpan(xy, keep, stack, 0, far, n, tolerance * tolerance);
+		pushSpan(xy, keep, stack, far, n, n, tolerance * tolerance);
+		return keep;
+	}
+
+	/**
+	 * Iterative Douglas-Peucker over vertices first..last (indices taken mod n).
+	 */
+	private static void pushSpan(float[] xy, boolean[] keep, int[] stack, int first, int last, int n, float toleranceSquared) {
+		int top = 0;
+		stack[top++] = first;
+		stack[top++] = last;
+
+		int a, b, worst;
+		float ax, ay, bx, by, worstDistance, d;
+		while (top > 0) {
+			b = stack[--top];
+			a = stack[--top];
+			if (b - a < 2) continue;
+
+			ax = xy[(a % n) * 2];
+			ay = xy[(a % n) * 2 + 1];
+			bx = xy[(b % n) * 2];
+			by = xy[(b % n) * 2 + 1];
+
+			worst = -1;
+			worstDistance = toleranceSquared;
+			for (int i = a + 1; i < b; ++i) {
+				d = segmentDistanceSquared(xy[(i % n) * 2], xy[(i % n) * 2 + 1], ax, ay, bx, by);
+				if (d > worstDistance) {
+					worstDistance = d;
+					worst = i;
+				}
+			}
+
+			if (worst >= 0) {
+				keep[worst % n] = true;
+				stack[top++] = a;
+				stack[top++] = worst;
+				stack[top++] = worst;
+				stack[top++] = b;
+			}
+		}
+	}
+
+	private static float segmentDistanceSquared(float px, float py, float ax, float ay, float bx, float by) {
+		float dx = bx - ax, dy = by - ay;
+		float lengthSquared = dx * dx + dy * dy;
+		if (lengthSquared == 0) return square(px - ax) + square(py - ay);
+
+		float t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+		t = (t < 0) ? 0 : (t > 1) ? 1 : t;
+		return square(px - (ax + t * dx)) + square(py - (ay + t * dy));
+	}
+
+	private static float square(float x) {
+		return x * x;
+	}
+}
@@ -0,0 +1,195 @@
+package sketches;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import processing.core.PImage;
+
+import toxi.video.capture.SimpleCapture;
+
+/**
+ * SimpleCapture that plays back a recording made by FrameRecorder, so the
+ * blob pipeline can be run without a camera, on exactly the same input
+ * every time.
+ *
+ * The "device" passed to initVideo() is the recording's path. Frames are
+ * handed out at the given frame rate, or as fast as getFrame() is called if
+ * the frame rate is 0 or less. The recording is read through memory-mapped
+ * segments, so it can be far bigger than the heap.
+ */
+public class ReplayCapture implements SimpleCapture {
+	// Largest part of the recording to map at once
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	private FileInputStream in;
+	private FileChannel channel;
+	private MappedByteBuffer[] segments;
+	private int framesPerSegment;
+	private int frameBytes;
+
+	private int width;
+	private int height;
+	private int frameCount;
+	private PImage frame;
+
+	private long frameNanos;
+	private long nextFrameNanos;
+	private int frameIndex;
+	private boolean loop = true;
+
+	private String error;
+
+	/**
+	 * @param recording Path of the recording
+	 * @param width Width the caller expects; must match the recording's
+	 * @param height Height the caller expects; must match the recording's
+	 * @param fps Frames to play back per second, or 0 to play them back as fast as they're asked for
+	 * @return Whether the recording could be opened
+	 */
+	public boolean initVideo(String recording, int width, int height, int fps) {
+		try {
+			in = new FileInputStream(new File(recording));
+			channel = in.getChannel();
+
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FrameRecorder.HEADER_BYTES);
+			if (header.getInt() != FrameRecorder.MAGIC || header.getInt() != FrameRecorder.VERSION) {
+				return fail(recording + " isn't a frame recording");
+			}
+			this.width = header.getInt();
+			this.height = header.getInt();
+			if (this.width != width || this.height != height) {
+				return fail(recording + " is " + this.width + "x" + this.height + ", not " + width + "x" + height);
+			}
+
+			frameBytes = FrameRecorder.getFrameBytes(width, height);
+			frameCount = (int)((channel.size() - FrameRecorder.HEADER_BYTES) / frameBytes);
+			if (frameCount == 0) return fail(recording + " has no frames");
+
+			framesPerSegment = (int)Math.max(1, SEGMENT_BYTES / frameBytes);
+			segments = new MappedByteBuffer[(frameCount + framesPerSegment - 1) / framesPerSegment];
+
+			frame = new PImage(width, height);
+			frameNanos = (fps > 0) ? 1000000000L / fps : 0;
+			nextFrameNanos = System.nanoTime();
+			frameIndex = 0;
+			return true;
+		} catch (IOException e) {
+			return fail("Can't read " + recording + ": " + e);
+		}
+	}
+
+	/**
+	 * @return Next frame of the recording, once it's due; the same PImage is reused for every frame
+	 */
+	public PImage getFrame() {
+		if (frameIndex >= frameCount) {
+			if (!loop) return null;
+			frameIndex = 0;
+		}
+
+		if (frameNanos > 0) {
+			long wait = nextFrameNanos - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			// Don't try to catch up on frames a slow caller missed
+			nextFrameNanos = Math.max(nextFrameNanos + frameNanos, System.nanoTime());
+		}
+
+		try {
+			readFrame(frameIndex++, frame.pixels);
+		} catch (IOException e) {
+			fail("Can't read frame " + (frameIndex - 1) + ": " + e);
+			return null;
+		}
+		frame.updatePixels();
+		return frame;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void shutdown() {
+		segments = null;
+		try {
+			if (in != null) in.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * @param loop Start over from the first frame after the last one (the default), rather than returning null
+	 */
+	public void setLoop(boolean loop) {
+		this.loop = loop;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return Index of the next frame getFrame() will return
+	 */
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * @param index
+	 */
+	public void seek(int index) {
+		frameIndex = index;
+	}
+
+	/**
+	 * @param index
+	 * @return Capture time of frame 'index', relative to the first frame of the recording
+	 * @throws IOException
+	 */
+	public long getRecordedNanos(int index) throws IOException {
+		return getSegment(index).getLong(getOffset(index));
+	}
+
+	/**
+	 * @param index
+	 * @param pixels Where to copy frame 'index's pixels to
+	 * @throws IOException
+	 */
+	public void readFrame(int index, int[] pixels) throws IOException {
+		// Read through a duplicate, so the shared segment's position is never touched
+		ByteBuffer frame = getSegment(index).duplicate();
+		frame.position(getOffset(index) + 8);
+		frame.slice().asIntBuffer().get(pixels, 0, width * height);
+	}
+
+	private MappedByteBuffer getSegment(int index) throws IOException {
+		int segmentIndex = index / framesPerSegment;
+		MappedByteBuffer segment = segments[segmentIndex];
+		if (segment == null) {
+			long start = FrameRecorder.HEADER_BYTES + (long)segmentIndex * framesPerSegment * frameBytes;
+			long length = (long)Math.min(framesPerSegment, frameCount - segmentIndex * framesPerSegment) * frameBytes;
+			segments[segmentIndex] = segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		}
+		return segment;
+	}
+
+	private int getOffset(int index) {
+		return (index % framesPerSegment) * frameBytes;
+	}
+
+	private boolean fail(String error) {
+		this.error = error;
+		return false;
+	}
+}
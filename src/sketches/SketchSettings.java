@@ -0,0 +1,47 @@
+package sketches;
+
+import java.util.Random;
+
+/**
+ * Settings sketches read from system properties, so a runner can start them
+ * at another size, with another renderer, or with a fixed random seed,
+ * without editing them.
+ *
+ * A fixed seed fixes every random choice made on the animation thread,
+ * including the seeds of the words built in the background, so the same
+ * words get built. It doesn't fix when they're ready, though, and with more
+ * than one builder thread, the order they finish in, so which frame a word
+ * first appears on can still vary from run to run.
+ */
+public final class SketchSettings {
+	public static final String RENDERER_PROPERTY = "sketches.renderer";
+	public static final String WIDTH_PROPERTY = "sketches.width";
+	public static final String HEIGHT_PROPERTY = "sketches.height";
+	public static final String SEED_PROPERTY = "sketches.seed";
+
+	private SketchSettings() {}
+
+	/**
+	 * @param defaultRenderer
+	 * @return Renderer to pass to size()
+	 */
+	public static String getRenderer(String defaultRenderer) {
+		return System.getProperty(RENDERER_PROPERTY, defaultRenderer);
+	}
+
+	public static int getWidth(int defaultWidth) {
+		return Integer.getInteger(WIDTH_PROPERTY, defaultWidth);
+	}
+
+	public static int getHeight(int defaultHeight) {
+		return Integer.getInteger(HEIGHT_PROPERTY, defaultHeight);
+	}
+
+	/**
+	 * @return Random seeded from the seed property if it's set, or an unseeded one if not
+	 */
+	public static Random newRandom() {
+		Long seed = Long.getLong(SEED_PROPERTY);
+		return (seed != null) ? new Random(seed) : new Random();
+	}
+}
@@ -0,0 +1,115 @@
+package sketches;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool for splitting per-frame image work into horizontal stripes.
+ *
+ * run() splits an image's rows into one stripe per thread, runs the first
+ * stripe on the calling thread and the rest on the pool, and returns once
+ * they've all finished. Only one run() may be in progress at a time.
+ */
+public class StripeExecutor {
+	public interface StripeTask {
+		/**
+		 * @param stripe Index of the stripe, from 0 to getStripeCount() - 1
+		 * @param startRow First row of the stripe
+		 * @param endRow Row just past the end of the stripe
+		 */
+		public void run(int stripe, int startRow, int endRow);
+	}
+
+	private final ExecutorService pool;
+	private final int stripeCount;
+	private final StripeRunner[] runners;
+
+	private volatile StripeTask task;
+	private volatile int rows;
+	private volatile CountDownLatch done;
+
+	/**
+	 * @param name Prefix of the pool's thread names
+	 * @param threads Number of stripes to split work into, including the one run by the caller
+	 */
+	public StripeExecutor(final String name, int threads) {
+		stripeCount = Math.max(1, threads);
+		pool = (stripeCount > 1) ? Executors.newFixedThreadPool(stripeCount - 1, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+
+		runners = new StripeRunner[stripeCount];
+		for (int i = 0; i < stripeCount; ++i) {
+			runners[i] = new StripeRunner(i);
+		}
+	}
+
+	public int getStripeCount() {
+		return stripeCount;
+	}
+
+	/**
+	 * @param stripe
+	 * @param rows
+	 * @return First row of 'stripe' when 'rows' rows are split up
+	 */
+	public int getStripeStart(int stripe, int rows) {
+		return (int)((long)rows * stripe / stripeCount);
+	}
+
+	/**
+	 * Run 'task' over every stripe of 'rows' rows, and wait for it to finish.
+	 *
+	 * @param task
+	 * @param rows
+	 */
+	public void run(StripeTask task, int rows) {
+		if (stripeCount == 1) {
+			task.run(0, 0, rows);
+			return;
+		}
+
+		this.task = task;
+		this.rows = rows;
+		this.done = new CountDownLatch(stripeCount - 1);
+		for (int i = 1; i < stripeCount; ++i) {
+			pool.execute(runners[i]);
+		}
+		runners[0].run();
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void shutdown() {
+		if (pool != null) pool.shutdownNow();
+	}
+
+	private class StripeRunner implements Runnable {
+		private final int stripe;
+
+		StripeRunner(int stripe) {
+			this.stripe = stripe;
+		}
+
+		public void run() {
+			try {
+				task.run(stripe, getStripeStart(stripe, rows), getStripeStart(stripe + 1, rows));
+			} finally {
+				if (stripe > 0) done.countDown();
+			}
+		}
+	}
+}
@@ -1,20 +1,23 @@
 package sketches;
 
 import processing.core.PApplet;
+import processing.core.PConstants;
 import processing.core.PFont;
+import processing.core.PGraphics;
+import processing.core.PGraphics3D;
+import processing.core.PImage;
 
 import geomerative.*;
 
-import java.util.HashMap;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Random;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import java.io.File;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -26,12 +29,20 @@ public class SubText extends PApplet {
 	
 	private final PApplet APP = this;
 	private static final PApplet HELPER_APP = new PApplet();
-	private static final Random RANDOM = new Random();
+	private static final Random RANDOM = SketchSettings.newRandom();
+	
+	public static final String MAX_WORDS_PROPERTY = "subtext.maxWords";
+	private static final String CORPUS_ERROR_MSG = "Antonym corpus must be readable!";
+	private static final String CORPUS_EMPTY_MSG = "Antonym corpus must have words with antonyms of the same length!";
 	
-	private static final int MAX_WORDS = 5;
 	private static final short LEFT = -1;
 	private static final short RIGHT = 1;
 	
+	private static final Metrics.Histogram FRAME_TIME = Metrics.histogram("subtext.frame");
+	private static final Metrics.Histogram WORD_BUILD_TIME = Metrics.histogram("subtext.word.build");
+	private static final Metrics.Histogram FONT_DRAW_TIME = Metrics.histogram("subtext.font.draw");
+	private static final Metrics.Histogram BATCH_DRAW_TIME = Metrics.histogram("subtext.batch.draw");
+	
 	private static final class COLORS {
 		public static final int black = HELPER_APP.color(0, 0, 0);
 		public static final int white = HELPER_APP.color(255, 255, 255);
@@ -54,8 +65,37 @@ public class SubText extends PApplet {
 	public int fontSize = minSubFontSize;
 	public float fontWidthRatio = 0.75f;
 	
-	private ArrayList<File> antonymFiles = new ArrayList<File>();	
-	public LinkedBlockingQueue<Word> activeWords = new LinkedBlockingQueue<Word>(MAX_WORDS);
+	// Shared by every word; words only carry their own font size
+	private SuperFont bannerFont;
+	
+	// Draw each character as one pre-rendered tile, rather than one text() per lit cell
+	public boolean useTileAtlas = true;
+	public long tileAtlasPixels = 16 * 1024 * 1024;
+	
+	// Gather every lit cell of every word, and draw them as one textured batch per glyph and size; only where the renderer can texture
+	public boolean batchCells = true;
+	private CellBatch cellBatch;
+	
+	private AntonymCorpus antonyms;
+	
+	// Most words on screen (or waiting for a free lane) at once, from the subtext.maxWords property.
+	// What's actually on screen is bounded by the lanes: there are height / (minSubFontSize * banner rows)
+	// of them (7 at 800x600), and each only fits as many words as go across the width with a
+	// maxSubFontSize gap between them, so a few dozen at most; the rest wait for room. Only a taller
+	// canvas or smaller words make room for hundreds.
+	public int maxWords;
+	
+	// Only ever touched from the animation thread
+	private MarqueeLaneScheduler<MarqueeWord> activeWords;
+	private ArrayList<MarqueeWord> waitingWords = new ArrayList<MarqueeWord>();
+	private ArrayList<MarqueeWord> retiredWords = new ArrayList<MarqueeWord>();
+	
+	// Word graphs built off the animation thread, waiting to become active
+	private ArrayBlockingQueue<MarqueeWord> preparedWords;
+	private WordBuilderExecutor wordPreparers;
+	private short nextDirection = LEFT;
+	
+	private MetricsHud hud = new MetricsHud(this);
 	
 	private void resetBackground() {
 		background(red(this.backgroundColor), green(this.backgroundColor), blue(this.backgroundColor));
@@ -66,7 +106,7 @@ public class SubText extends PApplet {
 	}
 	
 	public void setup() {
-		size(CANVAS_WIDTH, CANVAS_HEIGHT, OPENGL);
+		size(SketchSettings.getWidth(CANVAS_WIDTH), SketchSettings.getHeight(CANVAS_HEIGHT), SketchSettings.getRenderer(OPENGL));
 		frameRate(FRAME_RATE);
 		
 		subFont = loadFont(FONTS.liberationMonoBoldVLW);
@@ -80,67 +120,175 @@ public class SubText extends PApplet {
 		
 		RCommand.setSegmentator(RCommand.UNIFORMSTEP);
 		RCommand.setSegmentStep(3);
+		
+		try {
+			this.bannerFont = new BannerFont();
+		} catch (FileNotFoundException e) {
+			throw new AssertionError(MarqueeWord.FONT_ERROR_MSG);
+		}
 				
-		getAllFilesUnderDirectory("data/congruent_antonyms", this.antonymFiles);
+		try {
+			this.antonyms = AntonymCorpus.open(new File("data/congruent_antonyms"), new File("cache/congruent_antonyms.idx"));
+		} catch (IOException e) {
+			// Without words there's nothing to show, and word builds would just spin
+			e.printStackTrace();
+			throw new AssertionError(CORPUS_ERROR_MSG);
+		}
+		if (antonyms.getEqualLengthWordCount() == 0) throw new AssertionError(CORPUS_EMPTY_MSG);
+		
+		cellBatch = new CellBatch();
+		
+		maxWords = Integer.getInteger(MAX_WORDS_PROPERTY, 5);
+		
+		// Lanes are as tall as the smallest words, so bigger words take up two
+		float laneHeight = minSubFontSize * bannerFont.getRows();
+		activeWords = new MarqueeLaneScheduler<MarqueeWord>(maxWords, (int)(height / laneHeight), laneHeight, width, maxSubFontSize);
+		
+		preparedWords = new ArrayBlockingQueue<MarqueeWord>(maxWords);
+		wordPreparers = new WordBuilderExecutor(1, false, 0);
+		prepareWords();
+	}
+	
+	public void stop() {
+		wordPreparers.shutdown();
+		super.stop();
+	}
+
+	/**
+	 * @return Whether cells are batched this frame; JAVA2D can't texture, so falls back to drawing them one by one
+	 */
+	private boolean isBatchingCells() {
+		return batchCells && g instanceof PGraphics3D;
+	}
+	
+	public void keyPressed() {
+		if (key == 'm') hud.toggle();
+		else if (key == 't') useTileAtlas = !useTileAtlas;
+		else if (key == 'b') batchCells = !batchCells;
 	}
 
 	public void draw() {
+		long frameStart = System.nanoTime();
 		resetBackground();
 		resetFill();
-		try {
-			MarqueeWord majorWord;
-			short direction = LEFT;
-			while (activeWords.remainingCapacity() > 0) {
-				int randomFontSize = RANDOM.nextInt(maxSubFontSize - minSubFontSize) + minSubFontSize;
-				
-				File wordFile = this.getRandomWordFile();
-				String majorWordText = wordFile.getName().toUpperCase();
-				
-				majorWord = new AsciiMarqueeWord(majorWordText, randomFontSize, this.getSpeedFromFontSize(randomFontSize));
-				majorWord.initialize(direction);
-				
-				String minorWordText;
-				BufferedReader wordReader = null;
-				try {
-					wordReader = new BufferedReader(new FileReader(wordFile));
-					AsciiMarqueeWord minorWord = null;
-					while ((minorWordText = wordReader.readLine()) != null) {
-						minorWordText = minorWordText.toUpperCase();
-						minorWord = new AsciiMarqueeWord(minorWordText, randomFontSize, this.getSpeedFromFontSize(randomFontSize));
-						minorWord.initialize(direction);
-						
-						minorWord.addSubWord(majorWord);
-						majorWord.addSubWord(minorWord);
-					}
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-				
-				this.activeWords.add(majorWord);
-				
-				direction *= -1; // flip directions
-			}
-		} catch (IllegalStateException e) {}
 		
-		for (Word word : activeWords) {
-			word.draw();
+		for (int i = 0; i < activeWords.size(); ++i) {
+			activeWords.get(i).draw();
+		}
+		if (isBatchingCells()) cellBatch.draw();
+		
+		// Words only come and go once they've all been drawn
+		scheduleWords();
+		prepareWords();
+		
+		FRAME_TIME.recordSince(frameStart);
+		hud.draw();
+	}
+	
+	/**
+	 * @param word Word that has just moved off screen, to be swapped for its next sub-word at the end of the frame
+	 */
+	private void retire(MarqueeWord word) {
+		retiredWords.add(word);
+	}
+	
+	/**
+	 * Swap retired words for their next sub-words, take on new words if
+	 * there's room, and place as many waiting words as there are free lanes for.
+	 */
+	private void scheduleWords() {
+		MarqueeWord word;
+		for (int i = 0; i < retiredWords.size(); ++i) {
+			word = retiredWords.get(i);
+			activeWords.remove(word);
+			waitingWords.add((MarqueeWord)word.nextSubWord());
+		}
+		retiredWords.clear();
+		
+		// Only ever take words that are already built; never build them here
+		while (activeWords.size() + waitingWords.size() < maxWords && (word = preparedWords.poll()) != null) {
+			waitingWords.add(word);
+		}
+		
+		// Oldest first, so no word waits forever
+		for (int i = 0; i < waitingWords.size();) {
+			if (place(waitingWords.get(i))) waitingWords.remove(i);
+			else ++i;
 		}
 	}
 	
-	private void getAllFilesUnderDirectory(String directoryPath, ArrayList<File> files) {
-		File directory = new File(directoryPath);
-		assert directory.exists() && directory.isDirectory() : "The getAllFilesUnderDirectory function must be given the name of an existing directory!";
-		for (File file : directory.listFiles()) {
-			if (file.isFile()) {
-				files.add(file);
-			} else if (file.isDirectory()) {
-				getAllFilesUnderDirectory(file.getPath(), files);
-			}
+	/**
+	 * @param word
+	 * @return Whether there were free lanes to start 'word' off in
+	 */
+	private boolean place(MarqueeWord word) {
+		int span = activeWords.getSpan((float)word.getHeight());
+		float wordWidth = (float)word.getWidth(), speed = (float)word.getSpeed();
+		
+		// Try the other direction before giving up
+		short direction = nextDirection;
+		int lane = activeWords.findLanes(span, wordWidth, speed, direction, frameCount, RANDOM);
+		if (lane < 0) {
+			direction *= -1;
+			lane = activeWords.findLanes(span, wordWidth, speed, direction, frameCount, RANDOM);
+		}
+		if (lane < 0) return false;
+		
+		word.initialize(direction);
+		word.setY(activeWords.getLaneY(lane));
+		activeWords.add(word, lane, span, wordWidth, speed, direction, frameCount);
+		
+		nextDirection *= -1; // flip directions
+		return true;
+	}
+	
+	/**
+	 * Start building enough words to fill up the prepared words queue.
+	 */
+	private void prepareWords() {
+		int wanted = preparedWords.remainingCapacity() - wordPreparers.getInFlight();
+		for (int i = 0; i < wanted; ++i) {
+			wordPreparers.submit(new WordPreparer(RANDOM.nextLong()));
 		}
 	}
 	
-	private File getRandomWordFile() {
-		return this.antonymFiles.get(RANDOM.nextInt(this.antonymFiles.size() - 1));
+	/**
+	 * Builds a random major word and its equal-length antonyms as minor words,
+	 * and queues it in preparedWords. Positions are left to the animation
+	 * thread, which knows where the word will start out.
+	 */
+	private class WordPreparer implements Runnable {
+		// Seeded on the animation thread, so what's built doesn't depend on when the builder thread gets to it
+		private final Random random;
+		
+		public WordPreparer(long seed) {
+			random = new Random(seed);
+		}
+		
+		public void run() {
+			long buildStart = System.nanoTime();
+			int randomFontSize = random.nextInt(maxSubFontSize - minSubFontSize) + minSubFontSize;
+			
+			// Only antonyms as long as the word itself can be sub-words
+			int wordIndex = antonyms.randomEqualLengthWord(random);
+			if (wordIndex < 0) throw new AssertionError(CORPUS_EMPTY_MSG);
+			String majorWordText = antonyms.getWord(wordIndex).toUpperCase();
+			
+			MarqueeWord majorWord = new AsciiMarqueeWord(majorWordText, randomFontSize, getSpeedFromFontSize(randomFontSize));
+			
+			String minorWordText;
+			AsciiMarqueeWord minorWord = null;
+			for (int i = 0; i < antonyms.getEqualLengthAntonymCount(wordIndex); ++i) {
+				minorWordText = antonyms.getAntonym(wordIndex, i).toUpperCase();
+				minorWord = new AsciiMarqueeWord(minorWordText, randomFontSize, getSpeedFromFontSize(randomFontSize));
+				
+				minorWord.addSubWord(majorWord);
+				majorWord.addSubWord(minorWord);
+			}
+			
+			WORD_BUILD_TIME.recordSince(buildStart);
+			preparedWords.offer(majorWord);
+		}
 	}
 	
 	private double getSpeedFromFontSize(double fontSize) {
@@ -151,119 +299,105 @@ public class SubText extends PApplet {
 		public boolean isMonospaced();
 		public int getColumns();
 		public int getRows();
-		public double getHeight();
-		public double getWidth();
-		public void draw(String major, String minor);
+		public double getHeight(int fontSize);
+		public double getWidth(int fontSize);
+		public void draw(char major, char minor, int fontSize);
+		public void batch(CellBatch batch, char major, char minor, int fontSize, float x, float y);
 	}
 	
-	private abstract class MonoFont implements SuperFont {
-		private HashMap<String, boolean[][]> fontMask;
-		private int columns;
-		private int rows;
-		
-		private int fontSize;
+	private abstract class MonoFont implements SuperFont, GlyphTileAtlas.TileRenderer {
+		private BannerFontMask fontMask;
+		private GlyphTileAtlas tileAtlas;
 		
-		private static final char MASK_MARKER = '#';
-		
-		private static final String MASK_WIDTH_ERROR = "Each line in character's mask must not be longer than maximum width!";
 		private static final String MASK_MISSING_ERROR = "The mask for a character is missing!";
 				
-		public MonoFont(BufferedReader fontMaskSource, int fontSize) {
-			loadMask(fontMaskSource);
-			this.fontSize = fontSize;
-		}
-		
-		private void loadMask(BufferedReader fontMaskSource) {
-			int lineCount = 0;
-			String line;
-			LinkedList<String> characters = new LinkedList<String>();
-			int characterRow = 0;
-			boolean[][] characterMatrix = null;
-			this.fontMask = new HashMap<String, boolean[][]>();
-
-			try {
-				while ((line = fontMaskSource.readLine()) != null) {
-					++lineCount;
-					if (lineCount == 1) {
-						this.columns = line.length();
-					} else if (lineCount == 2) {
-						this.rows = line.length();
-					} else if (line.length() > 0 && characters.isEmpty()) {
-						// Non-empty line + no current characters = starting new character mask
-						for (int i = 0; i < line.length(); ++i) {
-							characters.add(line.substring(i, i + 1));
-						}
-						characterMatrix = new boolean[this.rows][this.columns];
-						characterRow = 0;
-					} else if (!characters.isEmpty()) {
-						assert line.length() <= this.columns : MASK_WIDTH_ERROR + " on line: " + lineCount;
-						
-						// Scan each character mask's line for 'on/off' locations
-						for (int column = 0; column < line.length(); ++column) {
-							boolean cellValue;
-							if (line.charAt(column) == MASK_MARKER) cellValue = true;
-							else cellValue = false;
-							characterMatrix[characterRow][column] = cellValue;
-						}
-						++characterRow;
-						
-						if (characterRow >= this.rows) {
-							// Save last characters' matrix
-							if (characterMatrix != null) {
-								for (String character : characters) {
-									fontMask.put(character, characterMatrix);
-								}
-							}
-							
-							// Reset for next character mask
-							characters.clear();
-							characterMatrix = null;
-						}
-					}
-				}
-				if (!characters.isEmpty()) {
-					// Save left-over matrix, if any
-					if (characterMatrix != null) {
-						for (String character : characters) {
-							fontMask.put(character, characterMatrix);
-						}
-					}
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		public MonoFont(BannerFontMask fontMask) {
+			this.fontMask = fontMask;
+			this.tileAtlas = new GlyphTileAtlas("subtext.atlas", tileAtlasPixels, this);
 		}
 		
 		public boolean isMonospaced() { return true; }
 		
-		public int getColumns() { return this.columns; }
+		public int getColumns() { return this.fontMask.getColumns(); }
 		
-		public int getRows() { return this.rows; }
+		public int getRows() { return this.fontMask.getRows(); }
 		
-		public double getWidth() {
-			return this.columns * this.fontSize * fontWidthRatio;
+		public double getWidth(int fontSize) {
+			return this.getColumns() * fontSize * fontWidthRatio;
 		}
 		
-		public double getHeight() {
-			return this.rows * this.fontSize;
+		public double getHeight(int fontSize) {
+			return this.getRows() * fontSize;
+		}
+		
+		public double getColumnOffset(int column, int fontSize) {
+			return column * fontSize * fontWidthRatio;
 		}
 		
-		public double getColumnOffset(int column) {
-			return column * this.fontSize * fontWidthRatio;
+		public double getRowOffset(int row, int fontSize) {
+			return row * fontSize;
 		}
 		
-		public double getRowOffset(int row) {
-			return row * this.fontSize;
+		public void draw(char major, char minor, int fontSize) {
+			long drawStart = System.nanoTime();
+			assert fontMask.isDefined(major) : MASK_MISSING_ERROR + " character: " + major;
+			if (useTileAtlas) {
+				drawTile(tileAtlas.getTile(major, minor, fontSize));
+			} else {
+				textFont(subFont, fontSize);
+				drawCells(g, major, minor, fontSize);
+			}
+			FONT_DRAW_TIME.recordSince(drawStart);
+		}
+		
+		/**
+		 * Renders the tile in white on a transparent background, so it can be tinted to any fill color.
+		 */
+		public PImage renderTile(char major, char minor, int fontSize) {
+			PGraphics tile = createGraphics(ceil((float)this.getWidth(fontSize)) + fontSize, ceil((float)this.getHeight(fontSize)) + fontSize, JAVA2D);
+			tile.beginDraw();
+			tile.noStroke();
+			tile.fill(255);
+			tile.textFont(subFont, fontSize);
+			tile.textAlign(PConstants.LEFT, TOP);
+			drawCells(tile, major, minor, fontSize);
+			tile.endDraw();
+			return tile.get();
+		}
+		
+		private void drawTile(PImage tile) {
+			// This version of Processing has no pushStyle(), so put the tint back by hand
+			boolean tinted = g.tint;
+			int tintColor = g.tintColor;
+			
+			tint(g.fillColor);
+			image(tile, 0, 0);
+			
+			if (tinted) tint(tintColor); else noTint();
+		}
+		
+		public void batch(CellBatch batch, char major, char minor, int fontSize, float x, float y) {
+			assert fontMask.isDefined(major) : MASK_MISSING_ERROR + " character: " + major;
+			int rowBits;
+			float rowY;
+			for (int row = 0; row < this.getRows(); ++row) {
+				rowBits = fontMask.getRowBits(major, row);
+				rowY = y + (int)this.getRowOffset(row, fontSize);
+				for (int column = 0; rowBits != 0; ++column, rowBits >>>= 1) {
+					if ((rowBits & 1) != 0) {
+						batch.add(minor, fontSize, x + (int)this.getColumnOffset(column, fontSize), rowY);
+					}
+				}
+			}
 		}
 		
-		public void draw(String major, String minor) {
-			boolean[][] characterMatrix = fontMask.get(major);
-			assert characterMatrix != null : MASK_MISSING_ERROR + " character: " + major;
-			for (int row = 0; row < this.rows; ++row) {
-				textFont(subFont, this.fontSize);
-				for (int column = 0; column < this.columns; ++column) {
-					if (characterMatrix[row][column]) {
-						text(minor, (int)this.getColumnOffset(column), (int)this.getRowOffset(row));
+		private void drawCells(PGraphics target, char major, char minor, int fontSize) {
+			int rowBits;
+			for (int row = 0; row < this.getRows(); ++row) {
+				rowBits = fontMask.getRowBits(major, row);
+				for (int column = 0; rowBits != 0; ++column, rowBits >>>= 1) {
+					if ((rowBits & 1) != 0) {
+						target.text(minor, (int)this.getColumnOffset(column, fontSize), (int)this.getRowOffset(row, fontSize));
 					}
 				}
 			}
@@ -273,8 +407,143 @@ public class SubText extends PApplet {
 	private class BannerFont extends MonoFont {
 		private static final String MASK_FILE = "data/banner_font_mask.txt";
 		
-		public BannerFont(int fontSize) throws FileNotFoundException {
-			super(new BufferedReader(new FileReader(MASK_FILE)), fontSize);
+		public BannerFont() throws FileNotFoundException {
+			super(BannerFontMask.get(MASK_FILE));
+		}
+	}
+	
+	/**
+	 * Lit cells of the banner characters drawn this frame, grouped by minor
+	 * character and font size. Each group is drawn as a single run of quads,
+	 * textured with an image of its minor character, so a frame costs one
+	 * beginShape() per distinct glyph instead of one text() per cell.
+	 * 
+	 * Groups and their buffers are kept from frame to frame and only ever
+	 * grow, so once every glyph has been seen, batching allocates nothing.
+	 */
+	private class CellBatch {
+		private static final int INITIAL_CELLS = 64;
+		
+		// Group of each (character, font size) combination, or -1 if it hasn't been seen yet
+		private final int[] groups = new int[BannerFontMask.CHARACTERS * (maxSubFontSize + 1)];
+		
+		private char[] groupCharacters = new char[16];
+		private int[] groupFontSizes = new int[16];
+		private PImage[] groupGlyphs = new PImage[16];
+		private float[][] groupCells = new float[16][];
+		private int[] groupCellCounts = new int[16];
+		private int groupCount = 0;
+		
+		// Groups with at least one cell this frame
+		private int[] usedGroups = new int[16];
+		private int usedGroupCount = 0;
+		
+		public CellBatch() {
+			Arrays.fill(groups, -1);
+		}
+		
+		/**
+		 * @param character Character drawn in the cell
+		 * @param fontSize
+		 * @param x Left edge of the cell
+		 * @param y Top edge of the cell
+		 */
+		public void add(char character, int fontSize, float x, float y) {
+			int group = getGroup(character, fontSize);
+			int count = groupCellCounts[group];
+			if (count == 0) {
+				if (usedGroupCount == usedGroups.length) usedGroups = Arrays.copyOf(usedGroups, usedGroupCount * 2);
+				usedGroups[usedGroupCount++] = group;
+			}
+			
+			float[] cells = groupCells[group];
+			if ((count + 1) * 2 > cells.length) groupCells[group] = cells = Arrays.copyOf(cells, cells.length * 2);
+			cells[count * 2] = x;
+			cells[count * 2 + 1] = y;
+			groupCellCounts[group] = count + 1;
+		}
+		
+		/**
+		 * Draw every cell added since the last draw(), and empty the batch.
+		 */
+		public void draw() {
+			long drawStart = System.nanoTime();
+			int group, count;
+			float[] cells;
+			PImage glyph;
+			float x, y;
+			
+			// Textured vertices take the tint, not the fill, so tint the white glyphs with the fill color;
+			// this version of Processing has no pushStyle(), so put the tint back by hand
+			boolean tinted = g.tint;
+			int tintColor = g.tintColor;
+			tint(g.fillColor);
+			
+			noStroke();
+			textureMode(IMAGE);
+			for (int i = 0; i < usedGroupCount; ++i) {
+				group = usedGroups[i];
+				count = groupCellCounts[group];
+				cells = groupCells[group];
+				glyph = groupGlyphs[group];
+				
+				beginShape(QUADS);
+				texture(glyph);
+				for (int cell = 0; cell < count; ++cell) {
+					x = cells[cell * 2];
+					y = cells[cell * 2 + 1];
+					vertex(x, y, 0, 0);
+					vertex(x + glyph.width, y, glyph.width, 0);
+					vertex(x + glyph.width, y + glyph.height, glyph.width, glyph.height);
+					vertex(x, y + glyph.height, 0, glyph.height);
+				}
+				endShape();
+				
+				groupCellCounts[group] = 0;
+			}
+			usedGroupCount = 0;
+			
+			if (tinted) tint(tintColor); else noTint();
+			BATCH_DRAW_TIME.recordSince(drawStart);
+		}
+		
+		private int getGroup(char character, int fontSize) {
+			assert character < BannerFontMask.CHARACTERS && fontSize <= maxSubFontSize;
+			int key = character * (maxSubFontSize + 1) + fontSize;
+			int group = groups[key];
+			if (group >= 0) return group;
+			
+			// First time this glyph has been seen at this size
+			if (groupCount == groupCharacters.length) {
+				int newLength = groupCount * 2;
+				groupCharacters = Arrays.copyOf(groupCharacters, newLength);
+				groupFontSizes = Arrays.copyOf(groupFontSizes, newLength);
+				groupGlyphs = Arrays.copyOf(groupGlyphs, newLength);
+				groupCells = Arrays.copyOf(groupCells, newLength);
+				groupCellCounts = Arrays.copyOf(groupCellCounts, newLength);
+			}
+			group = groupCount++;
+			groupCharacters[group] = character;
+			groupFontSizes[group] = fontSize;
+			groupGlyphs[group] = renderGlyph(character, fontSize);
+			groupCells[group] = new float[INITIAL_CELLS * 2];
+			groups[key] = group;
+			return group;
+		}
+		
+		/**
+		 * @return 'character' in white on a transparent background, big enough for the font's ascent and descent
+		 */
+		private PImage renderGlyph(char character, int fontSize) {
+			PGraphics glyph = createGraphics(fontSize, ceil(fontSize * 1.5f), JAVA2D);
+			glyph.beginDraw();
+			glyph.noStroke();
+			glyph.fill(255);
+			glyph.textFont(subFont, fontSize);
+			glyph.textAlign(PConstants.LEFT, TOP);
+			glyph.text(character, 0, 0);
+			glyph.endDraw();
+			return glyph.get();
 		}
 	}
 	
@@ -411,11 +680,7 @@ public class SubText extends PApplet {
 		
 		public AsciiMarqueeWord(String text, int fontSize) {
 			super(text, fontSize);
-			try {
-				this.wordFont = new BannerFont(this.fontSize);
-			} catch (FileNotFoundException e) {
-				throw new AssertionError(FONT_ERROR_MSG);
-			}
+			this.wordFont = bannerFont;
 		}
 		
 		public AsciiMarqueeWord(String text, int fontSize, double speed) {
@@ -428,7 +693,7 @@ public class SubText extends PApplet {
 		}
 		
 		public double getHeight() {
-			return this.wordFont.getHeight();
+			return this.wordFont.getHeight(this.fontSize);
 		}
 		
 		public double getCharacterOffset(int index) {
@@ -445,27 +710,30 @@ public class SubText extends PApplet {
 		public void draw() {
 			assert !this.subWords.isEmpty() : SUB_WORD_NULL_MSG;
 			if (!this.isVisible()) {
-				// Reset position and don't draw
-				this.initialize(this.getDirection());
-				
-				// Swap out for next subWord in line
-				activeWords.remove(this);
-				activeWords.add(this.nextSubWord());
+				// Don't draw, and swap out for next subWord in line once the frame is done
+				retire(this);
 			} else {
 				// Adjust position accordingly
 				this.setX(this.getX() + this.getSpeed() * this.getDirection());
 				
 				// ...and draw each character
 				String subWordText = this.subWords.peek().getText();
-				for (int i = 0; i < this.getText().length(); ++i) {
-					pushMatrix();
-					{
-						translate((float)(this.getX() + getCharacterOffset(i)), (float)this.getY());
-						String majorCharacter = this.getText().substring(i, i + 1);
-						String minorCharacter = subWordText.substring(i, i + 1);
-						wordFont.draw(majorCharacter, minorCharacter);
+				if (isBatchingCells()) {
+					// Only gather the cells here; SubText.draw() draws the whole batch at once
+					float characterAdvance = (float)getCharacterOffset(1);
+					float x = (float)this.getX(), y = (float)this.getY();
+					for (int i = 0; i < this.getText().length(); ++i) {
+						wordFont.batch(cellBatch, this.getText().charAt(i), subWordText.charAt(i), this.fontSize, x + i * characterAdvance, y);
+					}
+				} else {
+					for (int i = 0; i < this.getText().length(); ++i) {
+						pushMatrix();
+						{
+							translate((float)(this.getX() + getCharacterOffset(i)), (float)this.getY());
+							wordFont.draw(this.getText().charAt(i), subWordText.charAt(i), this.fontSize);
+						}
+						popMatrix();
 					}
-					popMatrix();
 				}
 			}
 		}
@@ -475,14 +743,28 @@ public class SubText extends PApplet {
 		private float FONT_SIZE_MULTIPLIER = 10f;
 		private float OUTLINE_STRING_SPACE_FACTOR = 13f;
 		
+		private static final String FONT_FILE = "LiberationMono-Bold.ttf";
+		
 		private RFont wordFont, wordSubFont;
 		RGroup wordCharactersShapes = null;
 		
+		// Offset of each character from the start of the word, plus the word's width as the last entry
+		private double[] characterOffsets;
+		
+		// Bounds of the word's characters, relative to the word's position
+		private float minX, minY, maxX, maxY;
+		
+		// Outline of the whole word spelled out in each sub-word's characters, relative to the word's position
+		private HashMap<Word, RGroup> outlineLayouts = new HashMap<Word, RGroup>();
+		
 		public OutlineMarqueeWord(String text, int fontSize) {
 			super(text, fontSize);
-			this.wordFont = new RFont(APP,  "LiberationMono-Bold.ttf", this.getMasterFontSize(), RFont.LEFT);
-			this.wordSubFont = new RFont(APP, "LiberationMono-Bold.ttf", fontSize, RFont.LEFT);
-			this.wordCharactersShapes = wordFont.toGroup(text);
+			this.wordFont = GlyphPolygonCache.getFont(APP, FONT_FILE, this.getMasterFontSize(), RFont.LEFT);
+			this.wordSubFont = GlyphPolygonCache.getFont(APP, FONT_FILE, fontSize, RFont.LEFT);
+			synchronized (this.wordFont) {
+				this.wordCharactersShapes = wordFont.toGroup(text);
+			}
+			layoutCharacters();
 		}
 		
 		public OutlineMarqueeWord(String text, int fontSize, double speed) {
@@ -495,107 +777,117 @@ public class SubText extends PApplet {
 		}
 		
 		public boolean isVisible() {
-			RShape characterShape;
-			for (RGeomElem character : wordCharactersShapes.elements) {
-				characterShape = (RShape)character;
-				if (characterShape.isIn(g)) return true;
-			}
-			return false;
+			float left = (float)this.getX() + minX, top = (float)this.getY() + minY;
+			float right = (float)this.getX() + maxX, bottom = (float)this.getY() + maxY;
+			return right >= 0 && left <= width && bottom >= 0 && top <= height;
 		}
 		
 		public double getCharacterOffset(int i) {
-			if (i == 0) return 0;
-			double offset = 0;
-			RShape precedingCharacter;
-			RContour bounds;
-			double minX, maxX;
-			for (int j = 0; j < i; ++j) {
-				precedingCharacter = (RShape)this.wordCharactersShapes.elements[j];
-				bounds = precedingCharacter.getBounds();
-				minX = Double.MAX_VALUE;
-				maxX = Double.MIN_VALUE;
-				for (RPoint boundPoint : bounds.points) {
-					minX = min((float)minX, boundPoint.x);
-					maxX = max((float)maxX, boundPoint.x);
-				}
-				offset += maxX - minX;
-			}
-			return offset;
+			return characterOffsets[i];
 		}
 		
 		public double getWidth() {
-			double width = 0;
-			RContour bounds;
-			double minX, maxX;
-			for (int i = 0; i < this.wordCharactersShapes.elements.length; ++i) {
-				bounds = ((RShape)this.wordCharactersShapes.elements[i]).getBounds();
-				minX = Double.MAX_VALUE;
-				maxX = Double.MIN_VALUE;
-				for (RPoint boundPoint : bounds.points) {
-					minX = min((float)minX, boundPoint.x);
-					maxX = max((float)maxX, boundPoint.x);
-				}
-				width += maxX - minX;
-			}
-			return width;
+			return characterOffsets[characterOffsets.length - 1];
 		}
 		
 		public double getHeight() {
 			return 0;
 		}
 		
+		public void addSubWord(Word subWord) {
+			super.addSubWord(subWord);
+			if (!outlineLayouts.containsKey(subWord)) outlineLayouts.put(subWord, layoutOutline(subWord.getText()));
+		}
+		
 		public void draw() {
 			assert !this.subWords.isEmpty() : SUB_WORD_NULL_MSG;
 			if (!this.isVisible()) {
-				// Reset position and don't draw
-				this.initialize(this.getDirection());
-				
-				// Swap out for next subWord in line
-				activeWords.remove(this);
-				activeWords.add(this.nextSubWord());
+				// Don't draw, and swap out for next subWord in line once the frame is done
+				retire(this);
 			} else {
 				// Adjust position accordingly
 				this.setX(this.getX() + this.getSpeed() * this.getDirection());
 				
-				// ...and draw each character...
-				String subWordText = this.subWords.peek().getText();
-				char subWordCharacter;
-				char[] outlineCharacters;
-				int outlineStringLength;
-				RGroup outlineString;
-				RShape wordCharacter;
-				double offsetX;
-				RMatrix trans;
+				// ...and draw the sub-word's outline of the whole word in one go
+				pushMatrix();
+				{
+					translate((float)this.getX(), (float)this.getY());
+					outlineLayouts.get(this.subWords.peek()).draw(g);
+				}
+				popMatrix();
+			}
+		}
+		
+		/**
+		 * Find each character's offset, and the bounds of the whole word, in one pass.
+		 */
+		private void layoutCharacters() {
+			int characters = this.wordCharactersShapes.elements.length;
+			characterOffsets = new double[characters + 1];
+			minX = minY = Float.MAX_VALUE;
+			maxX = maxY = -Float.MAX_VALUE;
+			
+			RContour bounds;
+			float characterMinX, characterMaxX;
+			for (int i = 0; i < characters; ++i) {
+				bounds = ((RShape)this.wordCharactersShapes.elements[i]).getBounds();
+				characterMinX = Float.MAX_VALUE;
+				characterMaxX = -Float.MAX_VALUE;
+				for (RPoint boundPoint : bounds.points) {
+					characterMinX = min(characterMinX, boundPoint.x);
+					characterMaxX = max(characterMaxX, boundPoint.x);
+					minY = min(minY, boundPoint.y);
+					maxY = max(maxY, boundPoint.y);
+				}
 				
-				// for-each character in word...
-				for (int i = 0; i < this.wordCharactersShapes.elements.length; ++i) {
-					wordCharacter = (RShape)this.wordCharactersShapes.elements[i];
-					subWordCharacter = subWordText.charAt(i);
-					pushMatrix();
-					{
-						// position it...
-						offsetX = this.getX() + getCharacterOffset(i);
-						trans = new RMatrix();
-						trans.translate((float)offsetX, (float)this.getY());
-						
-						// and use sub-word character to draw outline of each sub-shape in main word's character
-						for (RSubshape subShape : ((RShape)wordCharacter).subshapes) {
-
-							// get proper sub-word character string for outlining...
-							outlineStringLength = floor(subShape.getCurveLength() / this.fontSize);
-							outlineCharacters = new char[outlineStringLength];
-							for (int k = 0; k < outlineStringLength; ++k) {
-								outlineCharacters[k] = subWordCharacter;
-							}
-							outlineString = wordSubFont.toGroup(new String(outlineCharacters));
-							outlineString = outlineString.adaptTo(subShape);
-							outlineString.transform(trans);
-							outlineString.draw(g);
-						}
+				// Each character is drawn shifted right by the widths of the characters before it
+				minX = min(minX, characterMinX + (float)characterOffsets[i]);
+				maxX = max(maxX, characterMaxX + (float)characterOffsets[i]);
+				characterOffsets[i + 1] = characterOffsets[i] + characterMaxX - characterMinX;
+			}
+			if (characters == 0) minX = minY = maxX = maxY = 0;
+		}
+		
+		/**
+		 * @param subWordText
+		 * @return Outline of each sub-shape of each of the word's characters, spelled out in the matching character of 'subWordText'
+		 */
+		private RGroup layoutOutline(String subWordText) {
+			RGroup layout = new RGroup();
+			char subWordCharacter;
+			char[] outlineCharacters;
+			int outlineStringLength;
+			RGroup outlineString;
+			RShape wordCharacter;
+			RMatrix trans;
+			
+			// for-each character in word...
+			for (int i = 0; i < this.wordCharactersShapes.elements.length; ++i) {
+				wordCharacter = (RShape)this.wordCharactersShapes.elements[i];
+				subWordCharacter = subWordText.charAt(i);
+				
+				// position it...
+				trans = new RMatrix();
+				trans.translate((float)getCharacterOffset(i), 0);
+				
+				// and use sub-word character to draw outline of each sub-shape in main word's character
+				for (RSubshape subShape : wordCharacter.subshapes) {
+					
+					// get proper sub-word character string for outlining...
+					outlineStringLength = floor(subShape.getCurveLength() / this.fontSize);
+					outlineCharacters = new char[outlineStringLength];
+					for (int k = 0; k < outlineStringLength; ++k) {
+						outlineCharacters[k] = subWordCharacter;
+					}
+					synchronized (wordSubFont) {
+						outlineString = wordSubFont.toGroup(new String(outlineCharacters));
+						outlineString = outlineString.adaptTo(subShape);
 					}
-					popMatrix();
+					outlineString.transform(trans);
+					layout.addElement(outlineString);
 				}
 			}
+			return layout;
 		}
 	}
 	
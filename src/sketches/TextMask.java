@@ -41,7 +41,7 @@ public class TextMask extends PApplet {
 	float rotAngle;
 
 	public void setup() {
-		size(400, 400, OPENGL);
+		size(SketchSettings.getWidth(400), SketchSettings.getHeight(400), SketchSettings.getRenderer(OPENGL));
 		
 		RCommand.setSegmentator(RCommand.UNIFORMSTEP);
 		RCommand.setSegmentStep(-1);
@@ -44,7 +44,7 @@ public class TextStencil extends PApplet {
 	}
 	
 	public void setup() {
-		size(800, 800, OPENGL);
+		size(SketchSettings.getWidth(800), SketchSettings.getHeight(800), SketchSettings.getRenderer(OPENGL));
 		
 		baseFontSize = 144;
 
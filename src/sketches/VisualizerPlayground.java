@@ -15,6 +15,10 @@ public class VisualizerPlayground extends PApplet {
 	private static final long serialVersionUID = 1L;
 	
 	private static final int BINS = 30;
+	
+	private static final Metrics.Histogram FRAME_TIME = Metrics.histogram("visualizer.frame");
+	private static final Metrics.Histogram FFT_TIME = Metrics.histogram("visualizer.fft");
+	private static final Metrics.Histogram BEAT_TIME = Metrics.histogram("visualizer.beat");
 
 	private static final int[] screenDimensions = new int[] { 640, 480 };
 //	private static final int[] screenDimensions = new int[] { 1400, 1050 };
@@ -74,6 +78,8 @@ public class VisualizerPlayground extends PApplet {
 	
 	private Tween transition;
 	
+	private MetricsHud hud;
+	
 	static public void main(String args[]) {
 		PApplet.main(new String[] { "--display=2", /*"--present",*/ "sketches.VisualizerPlayground" });
 	}
@@ -112,12 +118,21 @@ public class VisualizerPlayground extends PApplet {
 		stroke(255);
 		strokeWeight((float)height / 96);
 		background(backgroundColor);
+		
+		hud = new MetricsHud(this);
+	}
+	
+	public void keyPressed() {
+		if (key == 'm') hud.toggle();
 	}
 	
 	public void draw() {
+		long frameStart = System.nanoTime();
 		background(backgroundColor);
 		
+		long beatStart = System.nanoTime();
 		beat.detect(player.mix);
+		BEAT_TIME.recordSince(beatStart);
 		
 		// If there's been a beat and it's been long enough since the last
 		// sample, or a sample hasn't been taken for the maximum allowed time,
@@ -125,8 +140,10 @@ public class VisualizerPlayground extends PApplet {
 		float currentMillis = millis();
 		float sampleDiff = currentMillis - lastSampleMillis;
 		if ((sampleDiff > periodMillis[0] && beat.isOnset()) || sampleDiff > periodMillis[periodMillis.length - 1]) {			
+			long fftStart = System.nanoTime();
 			FFT fft = nextFFT();
 			fft.forward(player.mix);
+			FFT_TIME.recordSince(fftStart);
 		
 			// Get maximum frequency amplitude for normalization purposes
 //			maxSpectrumValue = 0;
@@ -140,6 +157,9 @@ public class VisualizerPlayground extends PApplet {
 		}
 		
 		drawSpectrum();
+		
+		FRAME_TIME.recordSince(frameStart);
+		hud.draw();
 	}
 	
 	public void mousePressed() {
@@ -0,0 +1,246 @@
+package sketches;
+
+/**
+ * Animation state for every word on screen, kept in parallel primitive arrays.
+ *
+ * Words are packed into the first size() entries of each array; a retired word
+ * is replaced by the last one (so indices aren't stable across update()
+ * calls). The screen is divided into a grid of slots, one per word, and the
+ * rotation curve is read from precomputed easing tables, so updating and
+ * retiring words doesn't allocate anything.
+ *
+ * @param <T> Whatever the caller wants to draw for each word
+ */
+public class WordAnimator<T> {
+	public static final float ROT_LIMIT = (float)Math.PI / 2;
+
+	private static final int EASING_TABLE_SIZE = 1024;
+
+	/**
+	 * Preferred width-to-height ratio of a slot; words are much wider than they are tall.
+	 */
+	private static final float SLOT_ASPECT = 8;
+
+	private final int capacity;
+	private int count;
+
+	private final Object[] words;
+	private final long[] created;
+	private final long[] maxAge;
+	private final float[] alpha;
+	private final float[] rotation;
+	private final float[] scale;
+	private final int[] exponent;
+	private final int[] slot;
+
+	private final float[] slotX;
+	private final float[] slotY;
+	private final float slotWidth;
+	private final float slotHeight;
+	private final int[] freeSlots;
+	private int numFreeSlots;
+
+	private final int[] palette;
+	private final float fadeInIncrement;
+	private final float fadeOutIncrement;
+
+	private float[][] easingTables = new float[0][];
+
+	/**
+	 * @param capacity Maximum number of words on screen at once
+	 * @param areaWidth
+	 * @param areaHeight
+	 * @param palette RGB colors handed out to words, by slot
+	 * @param fadeInIncrement Alpha added per update while a word fades in
+	 * @param fadeOutIncrement Alpha removed per update once a word has outlived its age
+	 */
+	public WordAnimator(int capacity, float areaWidth, float areaHeight, int[] palette, float fadeInIncrement, float fadeOutIncrement) {
+		this.capacity = capacity;
+		this.palette = palette;
+		this.fadeInIncrement = fadeInIncrement;
+		this.fadeOutIncrement = fadeOutIncrement;
+
+		words = new Object[capacity];
+		created = new long[capacity];
+		maxAge = new long[capacity];
+		alpha = new float[capacity];
+		rotation = new float[capacity];
+		scale = new float[capacity];
+		exponent = new int[capacity];
+		slot = new int[capacity];
+
+		// Lay slots out in a grid of roughly SLOT_ASPECT-shaped cells
+		int columns = Math.max(1, Math.round((float)Math.sqrt(capacity * areaWidth / (SLOT_ASPECT * areaHeight))));
+		int rows = (capacity + columns - 1) / columns;
+		slotWidth = areaWidth / columns;
+		slotHeight = areaHeight / rows;
+
+		slotX = new float[capacity];
+		slotY = new float[capacity];
+		freeSlots = new int[capacity];
+		for (int i = 0; i < capacity; ++i) {
+			slotX[i] = (i / rows) * slotWidth + slotWidth / 2;
+			slotY[i] = (i % rows) * slotHeight + slotHeight / 2;
+
+			// Hand out slots in order, first to last
+			freeSlots[capacity - 1 - i] = i;
+		}
+		numFreeSlots = capacity;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public boolean hasFreeSlot() {
+		return numFreeSlots > 0;
+	}
+
+	/**
+	 * @param word
+	 * @param now
+	 * @param maxAgeInMillis How long the word stays up before it starts fading out
+	 * @param width Unscaled width of the word
+	 * @param height Unscaled height of the word
+	 * @param motionExponent Odd exponent shaping the word's rotation curve; higher means it lingers face-on longer
+	 * @return Index of the word, which stays valid until the next update()
+	 */
+	public int add(T word, long now, long maxAgeInMillis, float width, float height, int motionExponent) {
+		assert numFreeSlots > 0 : "No free slots left for a new word";
+		assert motionExponent % 2 == 1 : "Rotation curve exponent must be odd";
+
+		int i = count++;
+		words[i] = word;
+		created[i] = now;
+		maxAge[i] = maxAgeInMillis;
+		alpha[i] = 0;
+		rotation[i] = -ROT_LIMIT;
+		exponent[i] = motionExponent;
+		slot[i] = freeSlots[--numFreeSlots];
+
+		float horzFitFactor = slotWidth / width;
+		float vertFitFactor = slotHeight / height;
+		scale[i] = (horzFitFactor < vertFitFactor) ? horzFitFactor : vertFitFactor;
+
+		getEasingTable(motionExponent);
+
+		return i;
+	}
+
+	/**
+	 * Advance every word's rotation and fade to 'now', retiring words that have finished fading out.
+	 *
+	 * @param now
+	 */
+	public void update(long now) {
+		double phase;
+		int i = 0;
+		while (i < count) {
+			phase = (double)(now - created[i]) / (double)maxAge[i];
+			rotation[i] = -ROT_LIMIT + ease(exponent[i], phase) * (ROT_LIMIT * 2);
+
+			if (now - created[i] > maxAge[i]) {
+				alpha[i] -= fadeOutIncrement;
+				if (alpha[i] <= 1) {
+					retire(i);
+					continue; // the last word now lives at i
+				}
+			} else if (alpha[i] < 255) {
+				alpha[i] = Math.min(255, alpha[i] + fadeInIncrement);
+			}
+			++i;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getWord(int i) {
+		return (T) words[i];
+	}
+
+	public float getX(int i) {
+		return slotX[slot[i]];
+	}
+
+	public float getY(int i) {
+		return slotY[slot[i]];
+	}
+
+	public float getScale(int i) {
+		return scale[i];
+	}
+
+	public float getRotation(int i) {
+		return rotation[i];
+	}
+
+	/**
+	 * @param i
+	 * @return ARGB color of the word, with its current alpha
+	 */
+	public int getColor(int i) {
+		int a = (int)alpha[i];
+		a = (a < 1) ? 1 : (a > 255) ? 255 : a;
+		return (a << 24) | (palette[slot[i] % palette.length] & 0xFFFFFF);
+	}
+
+	/**
+	 * @param i
+	 * @return Time at which the word starts fading out
+	 */
+	public long getRetireTime(int i) {
+		return created[i] + maxAge[i];
+	}
+
+	private void retire(int i) {
+		freeSlots[numFreeSlots++] = slot[i];
+
+		int last = --count;
+		words[i] = words[last];
+		created[i] = created[last];
+		maxAge[i] = maxAge[last];
+		alpha[i] = alpha[last];
+		rotation[i] = rotation[last];
+		scale[i] = scale[last];
+		exponent[i] = exponent[last];
+		slot[i] = slot[last];
+
+		words[last] = null;
+	}
+
+	/**
+	 * @param n
+	 * @param phase
+	 * @return ((2 * phase - 1)^n + 1) / 2
+	 */
+	private float ease(int n, double phase) {
+		if (phase < 0 || phase > 1) {
+			// Only happens while fading in/out, so don't bother with the table
+			return (float)((Math.pow(2d * phase - 1d, n) + 1d) / 2d);
+		}
+		float[] table = easingTables[n];
+		float position = (float)phase * (EASING_TABLE_SIZE - 1);
+		int index = (int)position;
+		if (index >= EASING_TABLE_SIZE - 1) return table[EASING_TABLE_SIZE - 1];
+		return table[index] + (table[index + 1] - table[index]) * (position - index);
+	}
+
+	private float[] getEasingTable(int n) {
+		if (n >= easingTables.length) {
+			float[][] tables = new float[n + 1][];
+			System.arraycopy(easingTables, 0, tables, 0, easingTables.length);
+			easingTables = tables;
+		}
+		if (easingTables[n] == null) {
+			float[] table = new float[EASING_TABLE_SIZE];
+			for (int i = 0; i < EASING_TABLE_SIZE; ++i) {
+				table[i] = (float)((Math.pow(2d * i / (EASING_TABLE_SIZE - 1) - 1d, n) + 1d) / 2d);
+			}
+			easingTables[n] = table;
+		}
+		return easingTables[n];
+	}
+}
@@ -0,0 +1,114 @@
+package sketches;
+
+import java.lang.reflect.Method;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool for running word builders off the animation thread.
+ *
+ * Keeps track of how many builds are in flight (so callers can apply
+ * backpressure against whatever queue the builds feed) and of how long a build
+ * usually takes (so callers can start a build just early enough for its result
+ * to be ready when it's needed).
+ */
+public class WordBuilderExecutor {
+	private static final double BUILD_TIME_SMOOTHING = 0.2;
+
+	private final ThreadPoolExecutor pool;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	// Double.doubleToLongBits() of the smoothed build time, so builds finishing at once can't lose each other's updates
+	private final AtomicLong averageBuildMillis = new AtomicLong();
+
+	/**
+	 * @param threads Maximum number of builds running at once
+	 * @param virtualThreads Run builds on virtual threads, when the JVM has them
+	 * @param initialBuildMillis Build-time estimate to use until a build has been timed
+	 */
+	public WordBuilderExecutor(int threads, boolean virtualThreads, long initialBuildMillis) {
+		ThreadFactory factory = virtualThreads ? getVirtualThreadFactory() : null;
+		if (factory == null) factory = new BuilderThreadFactory();
+
+		pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+		averageBuildMillis.set(Double.doubleToLongBits(initialBuildMillis));
+	}
+
+	/**
+	 * @param build
+	 */
+	public void submit(final Runnable build) {
+		inFlight.incrementAndGet();
+		pool.execute(new Runnable() {
+			public void run() {
+				long start = System.currentTimeMillis();
+				try {
+					build.run();
+				} finally {
+					long elapsed = System.currentTimeMillis() - start;
+					recordBuildMillis(elapsed);
+					inFlight.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return Number of builds that have been submitted but haven't finished yet
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return Smoothed wall-clock time a single build takes, in milliseconds
+	 */
+	public long getEstimatedBuildMillis() {
+		return (long)Double.longBitsToDouble(averageBuildMillis.get());
+	}
+
+	/**
+	 * @param elapsed Time a build just took, in milliseconds
+	 */
+	private void recordBuildMillis(long elapsed) {
+		long bits;
+		double average;
+		do {
+			bits = averageBuildMillis.get();
+			average = Double.longBitsToDouble(bits);
+		} while (!averageBuildMillis.compareAndSet(bits, Double.doubleToLongBits(average + (elapsed - average) * BUILD_TIME_SMOOTHING)));
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * @return Thread.ofVirtual().factory() on JVMs that support it, null otherwise
+	 */
+	private static ThreadFactory getVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static class BuilderThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "word-builder-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			// Leave the animation thread first in line for the CPU
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package sketches;
+
+import geomerative.RContour;
+import geomerative.RPoint;
+import geomerative.RPolygon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * On-disk cache of built word geometry.
+ *
+ * Each entry lives in its own small binary file (named after a hash of its
+ * key) and is read back through a memory-mapped buffer. Entries are written to
+ * a temporary file first and renamed into place, so concurrent builders and
+ * interrupted runs never leave a half-written entry behind.
+ */
+public class WordGeometryCache {
+	private static final int MAGIC = 0x57534743; // "WSGC"
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".wsg";
+
+	private final File directory;
+
+	public static class Entry {
+		public RPoint center;
+		public RPoint dimensions;
+		public RPolygon stencil;
+		public RPolygon[] polys;
+	}
+
+	/**
+	 * @param directory Directory to keep entries in; created if it doesn't exist
+	 */
+	public WordGeometryCache(File directory) {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.err.println("Can't create word geometry cache in " + directory + "!");
+		}
+	}
+
+	/**
+	 * @param key Everything the cached geometry depends on
+	 * @return Cached geometry for 'key', or null if there isn't any (or it can't be read)
+	 */
+	public Entry load(String key) {
+		File file = getFile(key);
+		if (!file.isFile()) return null;
+
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+			byte[] keyBytes = new byte[buffer.getInt()];
+			buffer.get(keyBytes);
+			if (!key.equals(new String(keyBytes, "UTF-8"))) return null; // hash collision
+
+			Entry entry = new Entry();
+			entry.center = new RPoint(buffer.getFloat(), buffer.getFloat());
+			entry.dimensions = new RPoint(buffer.getFloat(), buffer.getFloat());
+			entry.stencil = readPolygon(buffer);
+			entry.polys = new RPolygon[buffer.getInt()];
+			for (int i = 0; i < entry.polys.length; ++i) {
+				entry.polys[i] = readPolygon(buffer);
+			}
+			return entry;
+		} catch (Exception e) {
+			System.err.println("Ignoring unreadable word geometry cache entry " + file + ": " + e);
+			return null;
+		} finally {
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * @param key Everything the cached geometry depends on
+	 * @param entry
+	 */
+	public void store(String key, Entry entry) {
+		File file = getFile(key);
+		File tmpFile = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			byte[] keyBytes = key.getBytes("UTF-8");
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(keyBytes.length);
+			out.write(keyBytes);
+			out.writeFloat(entry.center.x);
+			out.writeFloat(entry.center.y);
+			out.writeFloat(entry.dimensions.x);
+			out.writeFloat(entry.dimensions.y);
+			writePolygon(out, entry.stencil);
+			out.writeInt(entry.polys.length);
+			for (RPolygon poly : entry.polys) {
+				writePolygon(out, poly);
+			}
+			out.close();
+			out = null;
+
+			if (!tmpFile.renameTo(file)) {
+				// Somebody else got there first (or this platform won't rename over files)
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			System.err.println("Can't write word geometry cache entry " + file + ": " + e);
+			tmpFile.delete();
+		} finally {
+			try {
+				if (out != null) out.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	private File getFile(String key) {
+		// 64-bit FNV-1a hash of the key; the full key is kept in the file to catch collisions
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); ++i) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return new File(directory, Long.toHexString(hash) + SUFFIX);
+	}
+
+	private static void writePolygon(DataOutputStream out, RPolygon poly) throws IOException {
+		if (poly.contours == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(poly.contours.length);
+		for (RContour contour : poly.contours) {
+			out.writeInt(contour.points.length);
+			for (RPoint point : contour.points) {
+				out.writeFloat(point.x);
+				out.writeFloat(point.y);
+			}
+		}
+	}
+
+	private static RPolygon readPolygon(ByteBuffer buffer) {
+		RPolygon poly = new RPolygon();
+		int numContours = buffer.getInt();
+		RPoint[] points;
+		for (int i = 0; i < numContours; ++i) {
+			points = new RPoint[buffer.getInt()];
+			for (int j = 0; j < points.length; ++j) {
+				points[j] = new RPoint(buffer.getFloat(), buffer.getFloat());
+			}
+			poly.addContour(points);
+		}
+		return poly;
+	}
+}
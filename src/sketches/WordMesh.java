@@ -0,0 +1,143 @@
+package sketches;
+
+import geomerative.RMesh;
+import geomerative.RPoint;
+import geomerative.RPolygon;
+import geomerative.RStrip;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+
+/**
+ * A word's polygons, tessellated once into a flat triangle list.
+ *
+ * Vertices are packed as (x, y, depth offset) triples, three vertices per
+ * triangle, so a whole word can be drawn with a single beginShape(TRIANGLES)
+ * and each polygon can still be pushed back along z by its own offset.
+ */
+public class WordMesh {
+	public static final int FLOATS_PER_VERTEX = 3;
+
+	private final float[] vertices;
+	private final int numVertices;
+
+	/**
+	 * @param vertices Packed (x, y, offset) triples, three vertices per triangle
+	 */
+	public WordMesh(float[] vertices) {
+		assert vertices.length % (FLOATS_PER_VERTEX * 3) == 0 : "Mesh vertices must make up whole triangles";
+		this.vertices = vertices;
+		this.numVertices = vertices.length / FLOATS_PER_VERTEX;
+	}
+
+	/**
+	 * @param polys
+	 * @param offsets Depth offset of each polygon in 'polys'
+	 * @return Mesh of every polygon's tessellation
+	 */
+	public static WordMesh fromPolygons(RPolygon[] polys, float[] offsets) {
+		RMesh[] meshes = new RMesh[polys.length];
+		int numStrips = 0, numStripVertices = 0;
+		for (int i = 0; i < polys.length; ++i) {
+			meshes[i] = polys[i].toMesh();
+			if (meshes[i] == null || meshes[i].strips == null) continue;
+			for (RStrip strip : meshes[i].strips) {
+				++numStrips;
+				numStripVertices += strip.vertices.length;
+			}
+		}
+
+		float[] stripVertices = new float[numStripVertices * 2];
+		int[] stripLengths = new int[numStrips];
+		float[] stripOffsets = new float[numStrips];
+		int stripIndex = 0, vertexIndex = 0;
+		for (int i = 0; i < meshes.length; ++i) {
+			if (meshes[i] == null || meshes[i].strips == null) continue;
+			for (RStrip strip : meshes[i].strips) {
+				for (RPoint vertex : strip.vertices) {
+					stripVertices[vertexIndex++] = vertex.x;
+					stripVertices[vertexIndex++] = vertex.y;
+				}
+				stripLengths[stripIndex] = strip.vertices.length;
+				stripOffsets[stripIndex] = offsets[i];
+				++stripIndex;
+			}
+		}
+
+		return fromStrips(stripVertices, stripLengths, stripOffsets);
+	}
+
+	/**
+	 * @param stripVertices Packed (x, y) pairs of every strip, one strip after another
+	 * @param stripLengths Number of vertices in each strip
+	 * @param stripOffsets Depth offset of each strip
+	 * @return Mesh of the triangles making up the given triangle strips
+	 */
+	public static WordMesh fromStrips(float[] stripVertices, int[] stripLengths, float[] stripOffsets) {
+		int numTriangles = 0;
+		for (int length : stripLengths) {
+			if (length >= 3) numTriangles += length - 2;
+		}
+
+		float[] vertices = new float[numTriangles * 3 * FLOATS_PER_VERTEX];
+		int out = 0, stripStart = 0;
+		int a, b, c;
+		for (int strip = 0; strip < stripLengths.length; ++strip) {
+			for (int i = 2; i < stripLengths[strip]; ++i) {
+				// Every other triangle in a strip is wound the other way around
+				a = stripStart + i - 2;
+				b = stripStart + ((i % 2 == 0) ? i - 1 : i);
+				c = stripStart + ((i % 2 == 0) ? i : i - 1);
+				out = putVertex(vertices, out, stripVertices, a, stripOffsets[strip]);
+				out = putVertex(vertices, out, stripVertices, b, stripOffsets[strip]);
+				out = putVertex(vertices, out, stripVertices, c, stripOffsets[strip]);
+			}
+			stripStart += stripLengths[strip];
+		}
+
+		return new WordMesh(vertices);
+	}
+
+	private static int putVertex(float[] vertices, int out, float[] stripVertices, int index, float offset) {
+		vertices[out++] = stripVertices[index * 2];
+		vertices[out++] = stripVertices[index * 2 + 1];
+		vertices[out++] = offset;
+		return out;
+	}
+
+	/**
+	 * @return Packed (x, y, offset) triples, three vertices per triangle
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	public int getVertexCount() {
+		return numVertices;
+	}
+
+	public int getTriangleCount() {
+		return numVertices / 3;
+	}
+
+	/**
+	 * Draw every triangle in one shape, with each vertex pushed back along z by
+	 * its offset times 'depthScale'.
+	 *
+	 * @param app
+	 * @param depthScale
+	 */
+	public void draw(PApplet app, float depthScale) {
+		app.beginShape(PConstants.TRIANGLES);
+		if (depthScale == 0) {
+			for (int i = 0; i < vertices.length; i += FLOATS_PER_VERTEX) {
+				app.vertex(vertices[i], vertices[i + 1], 0);
+			}
+		} else {
+			for (int i = 0; i < vertices.length; i += FLOATS_PER_VERTEX) {
+				app.vertex(vertices[i], vertices[i + 1], -vertices[i + 2] * depthScale);
+			}
+		}
+		app.endShape();
+	}
+}
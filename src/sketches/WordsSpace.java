@@ -9,9 +9,7 @@ import geomerative.RMatrix;
 import geomerative.RPoint;
 import geomerative.RPolygon;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 
 import java.util.ArrayList;
@@ -28,14 +26,29 @@ public class WordsSpace extends PApplet {
 	
 	protected PApplet APP;
 	
-	private static final Random RANDOM = new Random();
+	private static final Random RANDOM = SketchSettings.newRandom();
 	
-	private static final float ROT_LIMIT = PI / 2;
+	private static final float ROT_LIMIT = WordAnimator.ROT_LIMIT;
 	
 	private static final int MOTION_FACTOR = 3;
 	
 	private static final int LIFETIME_COEFFICIENT = 7;
 	
+	static final int SEGMENTATOR = RCommand.UNIFORMSTEP;
+	static final float SEGMENT_STEP = 0.15f;
+	
+	// Simplification tolerance of each level of detail, in unscaled glyph units; level 0 is the exact geometry
+	static final float[] LOD_TOLERANCES = new float[] { 0, 0.5f, 1.5f, 4f };
+	// Largest on-screen error, in pixels, that a coarser level of detail may introduce
+	static final float LOD_MAX_SCREEN_ERROR = 0.75f;
+	
+	private static final Metrics.Histogram FRAME_TIME = Metrics.histogram("wordsspace.frame");
+	private static final Metrics.Histogram BUILD_TIME = Metrics.histogram("wordsspace.build");
+	private static final Metrics.Histogram QUEUE_WAIT = Metrics.histogram("wordsspace.queue.wait");
+	private static final Metrics.Histogram WORD_DRAW_TIME = Metrics.histogram("wordsspace.word.draw");
+	private static final Metrics.Gauge POLYGONS_DRAWN = Metrics.gauge("wordsspace.polygons");
+	private static final Metrics.Gauge TRIANGLES_DRAWN = Metrics.gauge("wordsspace.triangles");
+	
 	private final int[] colorsSMPTE = new int[] {
 		color(192, 192,   0),
 		color(  0, 192, 192),
@@ -61,16 +74,21 @@ public class WordsSpace extends PApplet {
 	float defaultFadeInIncrement;
 	float defaultFadeOutIncrement;
 	
-	ArrayList<File> availableWords;
-	List<WordState> activeWords;
+	AntonymCorpus availableWords;
+	WordAnimator<WordState> activeWords;
 	ArrayBlockingQueue<WordState> wordsQueue;
 	int queueBufferLength;
-	List<WordState> retiredWords;
-	ArrayBlockingQueue<RPoint> availableLocations;
-	ArrayBlockingQueue<Integer> availableColors;
 	
-	LinkedList<Thread> wordBuilderThreads;
-	LinkedList<Thread> deadThreads;
+	WordGeometryCache geometryCache;
+	
+	WordBuilderExecutor builderExecutor;
+	int builderThreads;
+	boolean virtualBuilderThreads;
+	long buildLeadMillis;
+	
+	MetricsHud hud;
+	
+	boolean logBuilds = true;
 	
 	static public void main(String args[]) {
 		PApplet.main(new String[] { "--display=1", "--present", "sketches.WordsSpace" });
@@ -97,158 +115,162 @@ public class WordsSpace extends PApplet {
 		APP = this;
 
 //		size(800, 600, OPENGL);
-		size(1024, 768, OPENGL);
+		size(SketchSettings.getWidth(1024), SketchSettings.getHeight(768), SketchSettings.getRenderer(OPENGL));
 //		size(1400, 1050, OPENGL);
 //		size(1600, 1200, OPENGL);
 		
-		frame.setLocation(0, 0);
+		if (frame != null) frame.setLocation(0, 0);
 		background(defaultBackgroundColor);
 		
-		RCommand.setSegmentator(RCommand.UNIFORMSTEP);
-		RCommand.setSegmentStep(0.15f);
+		RCommand.setSegmentator(SEGMENTATOR);
+		RCommand.setSegmentStep(SEGMENT_STEP);
 		
 		strokeWeight(3);
 		noStroke();
 		smooth();
 		
 		maxNumWords = 5;
+//		maxNumWords = 300;
 		maxAgeInFrames = 150;
 		maxAgeInMillis = 10 * 1000;
 		queueBufferLength = 5;
 		wordsQueue = new ArrayBlockingQueue<WordState>(maxNumWords + queueBufferLength);
-		retiredWords = new LinkedList<WordState>();
 		
-		activeWords = new LinkedList<WordState>();
+		activeWords = new WordAnimator<WordState>(maxNumWords, width, height, colorsSpringHappiness, defaultFadeInIncrement, defaultFadeOutIncrement);
 		
-		availableWords = new ArrayList<File>();
-//		findWords(sketchPath("src/data/congruent_antonyms/verb"), availableWords);
-		findWords(sketchPath("src/data/chosen_antonyms"), availableWords);
-		
-		availableLocations = new ArrayBlockingQueue<RPoint>(maxNumWords);
-		for (int i = 0; i < maxNumWords; ++i) {
-			availableLocations.add(new RPoint((float)width / 2, (((float)height / maxNumWords) * i) + ((float)height / (maxNumWords * 2))));
+		try {
+//			availableWords = AntonymCorpus.open(new File(sketchPath("src/data/congruent_antonyms/verb")), new File(sketchPath("cache/congruent_antonyms_verb.idx")));
+			availableWords = AntonymCorpus.open(new File(sketchPath("src/data/chosen_antonyms")), new File(sketchPath("cache/chosen_antonyms.idx")));
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 		
-		availableColors = new ArrayBlockingQueue<Integer>(maxNumWords);
-		for (int color : colorsSpringHappiness) {
-			availableColors.add(color);
-		}
-		assert availableColors.size() == maxNumWords;
+		geometryCache = new WordGeometryCache(new File(sketchPath("cache/words")));
+//		geometryCache = null;
+		
+		builderThreads = max(1, Runtime.getRuntime().availableProcessors() - 1);
+//		builderThreads = 1;
+		virtualBuilderThreads = false;
+		buildLeadMillis = 500;
+		builderExecutor = new WordBuilderExecutor(builderThreads, virtualBuilderThreads, 2000);
 		
-		wordBuilderThreads = new LinkedList<Thread>();
-		deadThreads = new LinkedList<Thread>();
+		hud = new MetricsHud(this);
+	}
+	
+	public void stop() {
+		builderExecutor.shutdown();
+		super.stop();
+	}
+	
+	public void keyPressed() {
+		if (key == 'm') hud.toggle();
 	}
 	
 	public void draw() {
+		long frameStart = System.nanoTime();
 		background(defaultBackgroundColor);
 		
 		manageBuilders();
 		
 		// Grab any new words from the queue
+		long currentTime = System.currentTimeMillis();
 		WordState tmpState;
-		while (activeWords.size() < maxNumWords && (tmpState = wordsQueue.poll()) != null) {
-			tmpState.created = System.currentTimeMillis();
-			tmpState.location = availableLocations.poll();
-			tmpState.color = availableColors.poll();
-			activeWords.add(tmpState);
+		int motionCoefficient;
+		while (activeWords.hasFreeSlot() && (tmpState = wordsQueue.poll()) != null) {
+			QUEUE_WAIT.recordSince(tmpState.queued);
+			motionCoefficient = tmpState.metaWord.length() * MOTION_FACTOR;
+			activeWords.add(tmpState, currentTime, tmpState.maxAgeInMillis, tmpState.dimensions.x, tmpState.dimensions.y,
+				(motionCoefficient % 2 == 1) ? motionCoefficient : motionCoefficient + 1);
 		}
 		
 		// Remove aged words and draw active words
-		retiredWords.clear();
-		double calcBuffer;
-		int motionCoefficient;
-		long currentTime = System.currentTimeMillis();
+		activeWords.update(currentTime);
+		WordState word;
 		float rotAngle;
-		float horzFitFactor, vertFitFactor;
-		for (WordState word : activeWords) {
-			motionCoefficient = word.metaWord.length() * MOTION_FACTOR;
-			
-			calcBuffer = ((double)currentTime - (double)word.created) / (double)word.maxAgeInMillis;
-			calcBuffer = Math.pow(2d * calcBuffer - 1d, (motionCoefficient % 2 == 1) ? motionCoefficient : motionCoefficient + 1);
-			calcBuffer += 1d;
-			calcBuffer /= 2d;
-
-			rotAngle = -ROT_LIMIT + (float)calcBuffer * (ROT_LIMIT * 2);
-			
-			if (System.currentTimeMillis() - word.created > word.maxAgeInMillis) {
-				float newAlpha = alpha(word.color) - defaultFadeOutIncrement;
-				word.color = color(red(word.color), green(word.color), blue(word.color), (newAlpha<=1f)?1:newAlpha);
-				if (newAlpha <= 1) {
-					retiredWords.add(word);
-				}
-			} else if (alpha(word.color) < 255) {
-				word.color = color(red(word.color), green(word.color), blue(word.color), alpha(word.color) + defaultFadeInIncrement);
-			}
-			
-			horzFitFactor = (float)width / word.dimensions.x;
-			vertFitFactor = ((float)height / (float)maxNumWords) / word.dimensions.y;
+		long wordStart;
+		int polygons = 0, triangles = 0;
+		WordMesh mesh;
+		for (int i = 0; i < activeWords.size(); ++i) {
+			wordStart = System.nanoTime();
+			word = activeWords.getWord(i);
+			rotAngle = activeWords.getRotation(i);
+			mesh = word.meshes[getLevelOfDetail(activeWords.getScale(i), rotAngle)];
 			
 			pushMatrix();
 			{
-				translate(word.location.x, word.location.y);
-				scale((horzFitFactor < vertFitFactor) ? horzFitFactor : vertFitFactor);
+				translate(activeWords.getX(i), activeWords.getY(i));
+				scale(activeWords.getScale(i));
 //				translate(0, 0, -word.dimensions.x / 2);
 				rotateY(rotAngle);
 //				translate(0, 0, word.dimensions.x / 2);
 				translate(-word.center.x, -word.center.y);
 				
-				// Draw the character base polygons
-				fill(word.color);
-				for (int polyIndex = 0; polyIndex < word.polys.length; ++polyIndex) {
-					pushMatrix();
-					{
-						translate(0, 0, (rotAngle==0)?0:-(word.offsets[polyIndex] * (rotAngle / ROT_LIMIT)));
-						word.polys[polyIndex].draw(this);
-					}
-					popMatrix();
-				}
+				// Draw the character base polygons, each pushed back by its own offset
+				fill(activeWords.getColor(i));
+				mesh.draw(this, rotAngle / ROT_LIMIT);
 			}
 			popMatrix();
+			
+			polygons += word.polys.length;
+			triangles += mesh.getTriangleCount();
+			WORD_DRAW_TIME.recordSince(wordStart);
 		}
-		for (WordState retiredState : retiredWords) {
-			availableLocations.add(retiredState.location);
-			availableColors.add(retiredState.color);
-			activeWords.remove(retiredState);
-		}
+		POLYGONS_DRAWN.set(polygons);
+		TRIANGLES_DRAWN.set(triangles);
+		
+		FRAME_TIME.recordSince(frameStart);
+		hud.draw();
 	}
 	
-	public void findWords(String directoryPath, ArrayList<File> fileList) {
-		File directory = new File(directoryPath);
-		assert directory.exists() && directory.isDirectory() : "Can't find word data in " + directoryPath + "!";
-		for (File file : directory.listFiles()) {
-			if (file.isFile()) fileList.add(file);
-			else if (file.isDirectory()) findWords(file.getPath(), fileList);
+	/**
+	 * @param scale Current fit factor of the word
+	 * @param rotAngle Current rotation of the word about the y axis
+	 * @return Coarsest level of detail whose simplification error stays under LOD_MAX_SCREEN_ERROR on screen
+	 */
+	public static int getLevelOfDetail(float scale, float rotAngle) {
+		// rotateY() foreshortens x by cos(rotAngle) but leaves y alone, so average the two
+		float cosAngle = cos(rotAngle);
+		float pixelsPerUnit = scale * sqrt((1 + cosAngle * cosAngle) / 2);
+		
+		for (int level = LOD_TOLERANCES.length - 1; level > 0; --level) {
+			if (LOD_TOLERANCES[level] * pixelsPerUnit <= LOD_MAX_SCREEN_ERROR) return level;
 		}
+		return 0;
 	}
 	
 	public void manageBuilders() {
-		// Ask for more words to be built
-		Thread builderThread;
-		for (int i = wordBuilderThreads.size(); wordsQueue.remainingCapacity() > 0 && i < maxNumWords; ++i) {
-			builderThread = new Thread(new RandomWordBuilder(this.availableWords));
-			wordBuilderThreads.add(builderThread);
-			builderThread.start();
+		int inFlight = builderExecutor.getInFlight();
+		
+		// Words needed right now, for slots that are already empty...
+		int wanted = maxNumWords - activeWords.size();
+		
+		// ...plus one for every active word that will retire before a build started now would finish
+		long horizon = System.currentTimeMillis() + builderExecutor.getEstimatedBuildMillis() + buildLeadMillis;
+		for (int i = 0; i < activeWords.size(); ++i) {
+			if (activeWords.getRetireTime(i) <= horizon) ++wanted;
 		}
+		wanted -= wordsQueue.size() + inFlight;
 		
-		// Remove builder threads that have finished
-		deadThreads.clear();
-		for (Thread t : wordBuilderThreads) {
-			if (!t.isAlive()) deadThreads.add(t);
+		// Never start more builds than the queue has room for
+		int room = wordsQueue.remainingCapacity() - inFlight;
+		for (int i = 0; i < wanted && i < room; ++i) {
+			builderExecutor.submit(new RandomWordBuilder(this.availableWords));
 		}
-		for (Thread t : deadThreads) wordBuilderThreads.remove(t);
 	}
 	
 	class RandomWordBuilder implements Runnable {
-		private static final int MASK_FONTSIZE = 144;
-		private static final int BASE_FONTSIZE = 36;
-		private static final int MAX_WORD_LENGTH = 90;
+		static final int MASK_FONTSIZE = 144;
+		static final int BASE_FONTSIZE = 36;
 		
-		private static final String FORBIDDEN_CHARACTERS = "_ ";
+//		static final String MASK_FONTFILE = "ariblk.TTF";
+//		static final String BASE_FONTFILE = "ariblk.TTF";
+		static final String MASK_FONTFILE = "HelveticaNeueLTStd-Blk.ttf";
+		static final String BASE_FONTFILE = "HelveticaNeueLTStd-BlkCnO.ttf";
 		
-		ArrayList<File> availableWords;
+		AntonymCorpus availableWords;
 		
-		RFont maskFont;
-		RFont baseFont;
+		// Seeded from RANDOM on the thread that creates the builder, so what it builds doesn't depend on which builder thread runs it, or when
+		final Random random;
 		
 		RGroup maskText;
 		RPolygon maskTextPoly;
@@ -258,34 +280,114 @@ public class WordsSpace extends PApplet {
 		RPolygon baseCharPoly;
 		float baseMatrixSpacing;
 		
-		public RandomWordBuilder(ArrayList<File> availableWords) {
+		String maskFontFile;
+		String baseFontFile;
+		float segmentStep;
+		
+		public RandomWordBuilder(AntonymCorpus availableWords) {
+			this(availableWords, MASK_FONTFILE, BASE_FONTFILE, SEGMENT_STEP);
+		}
+		
+		public RandomWordBuilder(AntonymCorpus availableWords, String maskFontFile, String baseFontFile, float segmentStep) {
 			this.availableWords = availableWords;
+			this.maskFontFile = maskFontFile;
+			this.baseFontFile = baseFontFile;
+			this.segmentStep = segmentStep;
+			this.random = new Random(RANDOM.nextLong());
 			
-//			maskFont = new RFont(APP, "ariblk.TTF", MASK_FONTSIZE, RFont.CENTER);
-//			baseFont = new RFont(APP, "ariblk.TTF", BASE_FONTSIZE, RFont.CENTER);
-
-			maskFont = new RFont(APP, "HelveticaNeueLTStd-Blk.ttf", MASK_FONTSIZE, RFont.CENTER);
-			baseFont = new RFont(APP, "HelveticaNeueLTStd-BlkCnO.ttf", BASE_FONTSIZE, RFont.CENTER);
-			
+			// Glyphs come out of the shared cache, so no fonts need to be parsed here
 			baseMatrixSpacing = 2f;
 		}
 		
 		@Override
 		public void run() {
-			String[] wordData;
-			try {
-				wordData = readRandomWordData();
-			} catch (IOException e) {
+			String[] wordData = readRandomWordData();
+			if (wordData == null) {
 				wordData = new String[] {"words", "space"};
 			}
 			
 			try {
-				wordsQueue.add(buildWordState(wordData));
+				long buildStart = System.nanoTime();
+				WordState state = buildWordState(wordData);
+				BUILD_TIME.recordSince(buildStart);
+				
+				state.queued = System.nanoTime();
+				wordsQueue.add(state);
 			} catch (IllegalStateException e) {}
 		}
 		
 		public WordState buildWordState(String[] wordData) {
-			println("Building polys for words: " + wordData[0] + ", " + wordData[1]);
+			String cacheKey = getGeometryCacheKey(wordData);
+			WordGeometryCache.Entry geometry = (geometryCache != null) ? geometryCache.load(cacheKey) : null;
+			if (geometry == null) {
+				geometry = buildWordGeometry(wordData);
+				if (geometryCache != null) geometryCache.store(cacheKey, geometry);
+			}
+			
+			WordState state = new WordState();
+			
+			state.metaWord = wordData[0];
+			state.baseWord = wordData[1];
+			state.age = 0;
+			state.maxAgeInMillis = wordData[0].length() * LIFETIME_COEFFICIENT * 1000;
+//			state.color = defaultBaseColor;
+			state.center = geometry.center;
+			state.stencil = geometry.stencil;
+			state.polys = geometry.polys;
+			state.dimensions = geometry.dimensions;
+			state.offsets = new float[state.polys.length];
+			for (int i = 0; i < state.offsets.length; ++i) {
+				state.offsets[i] = (random.nextFloat() * state.dimensions.x) - (state.dimensions.x / 2);
+			}
+			state.meshes = buildLevelsOfDetail(state.polys, state.offsets);
+			
+			return state;
+		}
+		
+		/**
+		 * @param polys
+		 * @param offsets Depth offset of each polygon in 'polys'
+		 * @return One mesh per entry of LOD_TOLERANCES, each built from 'polys' simplified to that tolerance
+		 */
+		public WordMesh[] buildLevelsOfDetail(RPolygon[] polys, float[] offsets) {
+			WordMesh[] meshes = new WordMesh[LOD_TOLERANCES.length];
+			meshes[0] = WordMesh.fromPolygons(polys, offsets);
+			
+			List<RPolygon> lodPolys = new ArrayList<RPolygon>(polys.length);
+			float[] lodOffsets = new float[polys.length];
+			RPolygon tmpPoly;
+			for (int level = 1; level < LOD_TOLERANCES.length; ++level) {
+				lodPolys.clear();
+				for (int i = 0; i < polys.length; ++i) {
+					// Tiles smaller than the tolerance collapse entirely, and are left out
+					tmpPoly = PolygonSimplifier.simplify(polys[i], LOD_TOLERANCES[level]);
+					if (tmpPoly.contours == null) continue;
+					lodOffsets[lodPolys.size()] = offsets[i];
+					lodPolys.add(tmpPoly);
+				}
+				meshes[level] = WordMesh.fromPolygons(lodPolys.toArray(new RPolygon[lodPolys.size()]), lodOffsets);
+			}
+			return meshes;
+		}
+		
+		/**
+		 * @param wordData
+		 * @return Key identifying everything the geometry built for 'wordData' depends on
+		 */
+		public String getGeometryCacheKey(String[] wordData) {
+			return wordData[0] + "\n" + wordData[1]
+				+ "\n" + maskFontFile + "@" + MASK_FONTSIZE
+				+ "\n" + baseFontFile + "@" + BASE_FONTSIZE
+				+ "\n" + SEGMENTATOR + ":" + segmentStep
+				+ "\n" + baseMatrixSpacing;
+		}
+		
+		/**
+		 * @param wordData
+		 * @return Base polygons clipped to the mask word, plus the mask word's stencil, center and dimensions
+		 */
+		public WordGeometryCache.Entry buildWordGeometry(String[] wordData) {
+			if (logBuilds) println("Building polys for words: " + wordData[0] + ", " + wordData[1]);
 			
 			List<RPolygon> polys = new LinkedList<RPolygon>();
 			
@@ -298,13 +400,14 @@ public class WordsSpace extends PApplet {
 			
 			RPolygon tmpPoly;
 			RMatrix tmpMtx;
+			MaskTileClassifier maskClassifier;
 			
 			// Construct filler for each character of mask ("big") word
 			int charIndex = 0;
-			maskText = maskFont.toGroup(wordData[0]);
+			maskText = GlyphPolygonCache.getTextGroup(APP, maskFontFile, MASK_FONTSIZE, RFont.CENTER, wordData[0], SEGMENTATOR, segmentStep);
 			for (RGeomElem maskChar : maskText.elements) {
 				maskCharPoly = maskChar.toPolygon();
-				baseCharPoly = baseFont.toPolygon(baseWordChars[charIndex]);
+				baseCharPoly = GlyphPolygonCache.getCharPolygon(APP, baseFontFile, BASE_FONTSIZE, RFont.CENTER, baseWordChars[charIndex], SEGMENTATOR, segmentStep);
 				
 				// Construct group of charcter polygons for base character matrices
 				baseMatrixGroup = new RGroup();
@@ -322,9 +425,18 @@ public class WordsSpace extends PApplet {
 				baseMatrixPoly = baseMatrixGroup.toPolygon();
 				
 				tmpMtx = getAlignmentMatrix(baseMatrixPoly, maskCharPoly);
+				maskClassifier = new MaskTileClassifier(maskCharPoly);
 				for (RGeomElem poly : baseMatrixGroup.elements) {
 					((RPolygon) poly).transform(tmpMtx);
-					poly = ((RPolygon) poly).intersection(maskCharPoly).update();
+					
+					// Only tiles that cross the mask's outline need clipping
+					switch (maskClassifier.classify((RPolygon) poly)) {
+					case MaskTileClassifier.OUTSIDE:
+						continue;
+					case MaskTileClassifier.BOUNDARY:
+						poly = ((RPolygon) poly).intersection(maskCharPoly).update();
+						break;
+					}
 					if (((RPolygon) poly).contours != null) {
 						polys.add((RPolygon)poly);
 					}
@@ -340,58 +452,23 @@ public class WordsSpace extends PApplet {
 			maskTextStencil.transform(tmpMtx);
 			maskTextStencil = maskTextStencil.diff(maskTextPoly);
 			
-			WordState state = new WordState();
-			
-			state.metaWord = wordData[0];
-			state.baseWord = wordData[1];
-			state.age = 0;
-			state.maxAgeInMillis = wordData[0].length() * LIFETIME_COEFFICIENT * 1000;
-//			state.color = defaultBaseColor;
-			state.center = maskTextStencil.getCenter();
-			state.stencil = maskTextStencil;
-			state.polys = polys.toArray(new RPolygon[polys.size()]);
-			state.dimensions = getContourDims(state.stencil.getBounds());
-			state.offsets = new float[state.polys.length];
-			for (int i = 0; i < state.offsets.length; ++i) {
-				state.offsets[i] = (RANDOM.nextFloat() * state.dimensions.x) - (state.dimensions.x / 2);
-			}
+			WordGeometryCache.Entry geometry = new WordGeometryCache.Entry();
+			geometry.center = maskTextStencil.getCenter();
+			geometry.stencil = maskTextStencil;
+			geometry.polys = polys.toArray(new RPolygon[polys.size()]);
+			geometry.dimensions = getContourDims(maskTextStencil.getBounds());
 			
-			return state;
+			return geometry;
 		}
 		
 		/**
-		 * @return Array of two strings, where the first is a random word in the database, and the second is an antonym of that word
-		 * @throws IOException 
-		 * @throws Throwable
+		 * @return Array of two strings, where the first is a random word in the database, and the second is an antonym of that word (or null if the database is empty)
 		 */
-		public String[] readRandomWordData() throws IOException {
-			ArrayList<String> antonyms = new ArrayList<String>();
-			String tmpAntonym = null;
-			
-			File wordFile = null;
-			boolean valid = false;
-			while (!valid) {
-				wordFile = availableWords.get(RANDOM.nextInt(availableWords.size() - 1));
-				while (wordFile.getName().length() > MAX_WORD_LENGTH || wordFile.getName().matches("[^" + FORBIDDEN_CHARACTERS + "]*[" + FORBIDDEN_CHARACTERS + "]+.*")) {
-					println("Woops! '" + wordFile.getName() + "' contains one of these characters: '" + FORBIDDEN_CHARACTERS + "'. Skipping...");
-					wordFile = availableWords.get(RANDOM.nextInt(availableWords.size() - 1));
-				}
-				BufferedReader reader = new BufferedReader(new FileReader(wordFile));
-				antonyms.clear();
-				while ((tmpAntonym = reader.readLine()) != null) {
-					if (tmpAntonym.matches("[^" + FORBIDDEN_CHARACTERS + "]*[" + FORBIDDEN_CHARACTERS + "]+.*")) {
-						println("Woops! '" + wordFile.getName() + "' antonym '" + tmpAntonym + "' contains one of these characters: '" + FORBIDDEN_CHARACTERS + "'. Skipping...");
-						continue;
-					}
-					antonyms.add(tmpAntonym);
-				}
-				if (!antonyms.isEmpty()) {
-					tmpAntonym = antonyms.get((antonyms.size() > 1) ? RANDOM.nextInt(antonyms.size() - 1) : 0);
-					valid = true;
-				}
-			}
+		public String[] readRandomWordData() {
+			String[] wordData = (availableWords != null) ? availableWords.randomEqualLengthPair(random) : null;
+			if (wordData == null) return null;
 			
-			return new String[] { wordFile.getName(), tmpAntonym.toUpperCase() };
+			return new String[] { wordData[0], wordData[1].toUpperCase() };
 		}
 		
 		/**
@@ -451,14 +528,13 @@ public class WordsSpace extends PApplet {
 		String baseWord;
 		String metaWord;
 		float age;
-		long created;
 		long maxAgeInMillis;
-		int color;
+		long queued;
 		RPoint center;
 		RPoint dimensions;
-		RPoint location;
 		float[] offsets;
 		RPolygon[] polys;
+		WordMesh[] meshes;
 		RPolygon stencil;
 	}
 	
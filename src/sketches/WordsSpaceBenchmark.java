@@ -0,0 +1,132 @@
+package sketches;
+
+import geomerative.RFont;
+import geomerative.RGeomElem;
+import geomerative.RGroup;
+import geomerative.RPolygon;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for the WordsSpace geometry pipeline.
+ *
+ * Measures RandomWordBuilder.buildWordState, getBaseMatrixDims and
+ * getAlignmentMatrix, and WordsSpace.getContourDims, over a seeded selection
+ * of corpus words, for each font pair and each segment step given.
+ *
+ * Usage: WordsSpaceBenchmark [-seed N] [-words N] [-warmup N] [-iterations N]
+ *        [-steps 0.15,0.5,1] [-corpus DIR]
+ *
+ * Nothing is drawn, but RFont still needs a PApplet to load fonts through,
+ * and a PApplet is an AWT component, so run it with a display (Xvfb will do).
+ * The geometry disk cache is not used, so every buildWordState clips.
+ */
+public class WordsSpaceBenchmark {
+	private static final String[][] FONT_PAIRS = new String[][] {
+		{ WordsSpace.RandomWordBuilder.MASK_FONTFILE, WordsSpace.RandomWordBuilder.BASE_FONTFILE },
+		{ "ariblk.TTF", "ariblk.TTF" }
+	};
+
+	public static void main(String args[]) throws IOException {
+		long seed = 1;
+		int numWords = 32;
+		int warmup = 50;
+		int iterations = 200;
+		float[] steps = new float[] { WordsSpace.SEGMENT_STEP, 0.5f, 1f };
+		String corpusPath = "src/data/chosen_antonyms";
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-seed")) seed = Long.parseLong(args[i + 1]);
+			else if (args[i].equals("-words")) numWords = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-warmup")) warmup = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-iterations")) iterations = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-corpus")) corpusPath = args[i + 1];
+			else if (args[i].equals("-steps")) {
+				String[] parts = args[i + 1].split(",");
+				steps = new float[parts.length];
+				for (int j = 0; j < parts.length; ++j) steps[j] = Float.parseFloat(parts[j]);
+			}
+		}
+
+		File corpusDirectory = new File(corpusPath);
+		AntonymCorpus corpus = AntonymCorpus.open(corpusDirectory, new File("cache", corpusDirectory.getName() + ".idx"));
+
+		Random random = new Random(seed);
+		String[][] words = new String[numWords][];
+		for (int i = 0; i < numWords; ++i) {
+			String[] pair = corpus.randomEqualLengthPair(random);
+			if (pair == null) throw new IllegalArgumentException(corpusPath + " has no antonym pairs of equal length");
+			words[i] = new String[] { pair[0], pair[1].toUpperCase() };
+		}
+
+		WordsSpace sketch = new WordsSpace();
+		sketch.APP = sketch;
+		sketch.sketchPath = System.getProperty("user.dir");
+		sketch.logBuilds = false;
+
+		System.out.println(Benchmark.Result.getHeader());
+		for (String[] fonts : FONT_PAIRS) {
+			for (float step : steps) {
+				String suffix = " [" + fonts[0] + "/" + fonts[1] + " @" + step + "]";
+				for (Benchmark.Result result : runAll(sketch, corpus, fonts[0], fonts[1], step, words, warmup, iterations)) {
+					result.name += suffix;
+					System.out.println(result);
+				}
+			}
+		}
+	}
+
+	private static List<Benchmark.Result> runAll(WordsSpace sketch, AntonymCorpus corpus, String maskFontFile, String baseFontFile, float step,
+			final String[][] words, int warmup, int iterations) {
+		final WordsSpace.RandomWordBuilder builder = sketch.new RandomWordBuilder(corpus, maskFontFile, baseFontFile, step);
+
+		// Matching mask and base glyphs for every character of every word
+		List<RPolygon> maskGlyphs = new ArrayList<RPolygon>();
+		List<RPolygon> baseGlyphs = new ArrayList<RPolygon>();
+		for (String[] word : words) {
+			RGroup maskText = GlyphPolygonCache.getTextGroup(sketch, maskFontFile, WordsSpace.RandomWordBuilder.MASK_FONTSIZE, RFont.CENTER, word[0], WordsSpace.SEGMENTATOR, step);
+			int charIndex = 0;
+			for (RGeomElem maskChar : maskText.elements) {
+				maskGlyphs.add(maskChar.toPolygon());
+				baseGlyphs.add(GlyphPolygonCache.getCharPolygon(sketch, baseFontFile, WordsSpace.RandomWordBuilder.BASE_FONTSIZE, RFont.CENTER, word[1].charAt(charIndex++), WordsSpace.SEGMENTATOR, step));
+			}
+		}
+		final RPolygon[] masks = maskGlyphs.toArray(new RPolygon[maskGlyphs.size()]);
+		final RPolygon[] bases = baseGlyphs.toArray(new RPolygon[baseGlyphs.size()]);
+		final float spacing = builder.baseMatrixSpacing;
+
+		List<Benchmark.Result> results = new ArrayList<Benchmark.Result>();
+		results.add(Benchmark.run("buildWordState", Math.min(warmup, words.length), iterations / 10 + 1, new Runnable() {
+			int next = 0;
+			public void run() {
+				builder.buildWordState(words[next++ % words.length]);
+			}
+		}));
+		results.add(Benchmark.run("getBaseMatrixDims", warmup * 100, iterations * 100, new Runnable() {
+			int next = 0;
+			public void run() {
+				int i = next++ % masks.length;
+				builder.getBaseMatrixDims(masks[i], bases[i], spacing);
+			}
+		}));
+		results.add(Benchmark.run("getAlignmentMatrix", warmup * 100, iterations * 100, new Runnable() {
+			int next = 0;
+			public void run() {
+				int i = next++ % masks.length;
+				builder.getAlignmentMatrix(bases[i], masks[i]);
+			}
+		}));
+		results.add(Benchmark.run("getContourDims", warmup * 100, iterations * 100, new Runnable() {
+			int next = 0;
+			public void run() {
+				WordsSpace.getContourDims(masks[next++ % masks.length].getBounds());
+			}
+		}));
+		return results;
+	}
+}